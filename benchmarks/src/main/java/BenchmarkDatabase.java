@@ -0,0 +1,66 @@
+import org.apache.commons.dbcp2.BasicDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory H2 database in MySQL mode with the schema of
+ * {@code db/schema.sql}, for the benchmarks.
+ *
+ * @see http://www.h2database.com/html/features.html#compatibility
+ */
+final class BenchmarkDatabase {
+
+    private static final int LOAD_BATCH = 10_000;
+
+    private BenchmarkDatabase() {
+    }
+
+    static BasicDataSource create(String name) throws SQLException {
+        BasicDataSource dataSource = new BasicDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        // Kept until closed explicitly, not when the pool lets go of its last connection
+        dataSource.setUrl("jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        PoolSettings.fromSystemProperties().applyTo(dataSource);
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS todos ("
+                    + "list_id BIGINT NOT NULL DEFAULT 0, "
+                    + "id BIGINT NOT NULL, name VARCHAR(255) NOT NULL, status VARCHAR(255) NOT NULL, "
+                    + "PRIMARY KEY (list_id, id))");
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_todos_list_status_id ON todos (list_id, status, id)");
+        }
+
+        return dataSource;
+    }
+
+    /**
+     * Saves todos with the ids {@code 1} to {@code rows}, every other one
+     * completed.
+     */
+    static void load(Repository repository, int rows) {
+        List<Todo> batch = new ArrayList<>(LOAD_BATCH);
+        for (long id = 1; id <= rows; id++) {
+            Todo.Status status = id % 2 == 0 ? Todo.Status.COMPLETED : Todo.Status.ACTIVE;
+            batch.add(new Todo(id, "Todo number " + id, status));
+
+            if (batch.size() == LOAD_BATCH || id == rows) {
+                repository.saveAll(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    static void drop(BasicDataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        } finally {
+            dataSource.close();
+        }
+    }
+}
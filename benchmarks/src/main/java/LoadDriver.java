@@ -0,0 +1,367 @@
+import org.apache.commons.dbcp2.BasicDataSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the whole stack, {@link JdkHttpServer} over {@link Application} over
+ * {@link RdbmsRepository} on an in-memory H2 database, with a mix of
+ * requests over loopback and writes throughput and latency percentiles to a
+ * JSON file.
+ *
+ * Requests arrive at a fixed rate however long the server takes to answer,
+ * an open model: each request is scheduled for a start time up front, and
+ * its latency is measured from that intended start, not from when a client
+ * thread got round to sending it. A server that stalls thus has every
+ * request scheduled during the stall counted as late, rather than the
+ * stall delaying the requests and hiding in a single slow sample, known as
+ * coordinated omission. The latency measured from the actual send is
+ * reported as well, as the service time.
+ *
+ * <pre>
+ * mvn -f benchmarks/pom.xml package
+ * java -Dtodomvc.load.rate=2000 -cp benchmarks/target/benchmarks.jar LoadDriver
+ * </pre>
+ *
+ * Settings, as system properties:
+ * <ul>
+ *     <li>{@code todomvc.load.rate} requests per second, 500 by default</li>
+ *     <li>{@code todomvc.load.arrivals} {@code poisson}, by default, or
+ *     {@code uniform} spacing of the requests</li>
+ *     <li>{@code todomvc.load.warmupSeconds} run but not recorded, 10 by default</li>
+ *     <li>{@code todomvc.load.seconds} recorded, 30 by default</li>
+ *     <li>{@code todomvc.load.connections} client threads, each with a
+ *     keep-alive connection, 64 by default</li>
+ *     <li>{@code todomvc.load.rows} todos in the database at the start, 1000 by default</li>
+ *     <li>{@code todomvc.load.mix} weights of the requests, by default
+ *     {@code index:70,create:10,toggle:10,delete:5,clear:5}</li>
+ *     <li>{@code todomvc.load.output} result file, {@code load-result.json} by default</li>
+ * </ul>
+ * The server is configured by its usual properties, e.g.
+ * {@code todomvc.server.executor}, and listens on {@code todomvc.port}, a
+ * free port by default.
+ *
+ * @see http://highscalability.com/blog/2015/10/5/your-load-generator-is-probably-lying-to-you-take-the-red-pi.html
+ */
+public class LoadDriver {
+
+    private static final String DEFAULT_MIX = "index:70,create:10,toggle:10,delete:5,clear:5";
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999, 0.9999};
+
+    private final String baseUrl;
+    private final int rows;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    // Requests scheduled before this are not recorded
+    private volatile long recordFrom = Long.MAX_VALUE;
+    private final AtomicLong lastCompletion = new AtomicLong();
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+    private final LatencyHistogram totalServiceTime = new LatencyHistogram();
+    private final LongAdder totalErrors = new LongAdder();
+
+    public LoadDriver(String baseUrl, int rows, String mix) {
+        this.baseUrl = baseUrl;
+        this.rows = rows;
+
+        String[] entries = mix.split(",");
+        operations = new Operation[entries.length];
+        cumulativeWeights = new int[entries.length];
+
+        int total = 0;
+        for (int i = 0; i < entries.length; i++) {
+            String[] entry = entries[i].trim().split(":");
+            if (entry.length != 2) {
+                throw new IllegalArgumentException("Expected name:weight in the mix, got " + entries[i]);
+            }
+            total += Integer.parseInt(entry[1].trim());
+            operations[i] = new Operation(entry[0].trim());
+            cumulativeWeights[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("The weights of the mix must add up to more than 0, got " + mix);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        double rate = Double.parseDouble(System.getProperty("todomvc.load.rate", "500"));
+        boolean poisson = !"uniform".equals(System.getProperty("todomvc.load.arrivals", "poisson"));
+        int warmupSeconds = Integer.getInteger("todomvc.load.warmupSeconds", 10);
+        int seconds = Integer.getInteger("todomvc.load.seconds", 30);
+        int connections = Integer.getInteger("todomvc.load.connections", 64);
+        int rows = Integer.getInteger("todomvc.load.rows", 1000);
+        String mix = System.getProperty("todomvc.load.mix", DEFAULT_MIX);
+        Path output = Paths.get(System.getProperty("todomvc.load.output", "load-result.json"));
+
+        if (System.getProperty("todomvc.port") == null) {
+            System.setProperty("todomvc.port", "0");
+        }
+        // Keep-alive connections, one per client thread
+        System.setProperty("http.maxConnections", Integer.toString(connections));
+
+        BasicDataSource dataSource = BenchmarkDatabase.create("load");
+        RdbmsRepository repository = new RdbmsRepository(dataSource);
+        BenchmarkDatabase.load(repository, rows);
+
+        JdkHttpServer server = new JdkHttpServer(new Application(repository));
+        server.run();
+
+        try {
+            LoadDriver driver = new LoadDriver("http://127.0.0.1:" + server.getPort(), rows, mix);
+            Log.info("Driving {} requests/s at {} for {}s after {}s of warmup", rate, driver.baseUrl, seconds, warmupSeconds);
+
+            Map<String, Object> result = driver.run(rate, poisson, warmupSeconds, seconds, connections);
+
+            try (Writer writer = new OutputStreamWriter(Files.newOutputStream(output), StandardCharsets.UTF_8)) {
+                JsonWriter json = new JsonWriter(writer);
+                json.value(result);
+                json.flush();
+                writer.write('\n');
+            }
+            Log.info("Wrote {}: {}", output.toAbsolutePath(), result.get("total"));
+        } finally {
+            server.stop(0);
+            BenchmarkDatabase.drop(dataSource);
+            Log.flush(1000);
+        }
+    }
+
+    /**
+     * Schedules requests at the given rate from the calling thread, runs them
+     * on a pool of client threads and waits for the last one to finish.
+     */
+    public Map<String, Object> run(double rate, boolean poisson, int warmupSeconds, int seconds, int connections)
+            throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(connections);
+
+        double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(seconds);
+        recordFrom = measureStart;
+
+        long scheduled = 0;
+        double intended = start;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (intended < end) {
+            long intendedStart = (long) intended;
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Operation operation = pick(random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]));
+            clients.execute(() -> send(operation, intendedStart));
+            if (intendedStart >= measureStart) {
+                scheduled++;
+            }
+
+            intended += poisson ? -Math.log(1 - random.nextDouble()) * meanIntervalNanos : meanIntervalNanos;
+        }
+
+        clients.shutdown();
+        boolean drained = clients.awaitTermination(Math.max(60, seconds), TimeUnit.SECONDS);
+        if (!drained) {
+            Log.warn("Requests still running after the run, they are missing from the results");
+            clients.shutdownNow();
+        }
+
+        return result(rate, poisson, warmupSeconds, seconds, connections, scheduled, measureStart, end);
+    }
+
+    private Operation pick(int weight) {
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (weight < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void send(Operation operation, long intendedStart) {
+        long sendStart = System.nanoTime();
+        boolean ok;
+        try {
+            int status = operation.request(this);
+            ok = status >= 200 && status < 400;
+        } catch (IOException e) {
+            ok = false;
+        }
+        long done = System.nanoTime();
+
+        if (intendedStart >= recordFrom) {
+            operation.record(done - intendedStart, done - sendStart, ok);
+            totalLatency.record(done - intendedStart);
+            totalServiceTime.record(done - sendStart);
+            if (!ok) {
+                totalErrors.increment();
+            }
+            lastCompletion.accumulateAndGet(done, Math::max);
+        }
+    }
+
+    private int get(String path) throws IOException {
+        return exchange("GET", path, null);
+    }
+
+    private int post(String path, String form) throws IOException {
+        return exchange("POST", path, form);
+    }
+
+    private int exchange(String method, String path, String form) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        // The 303 after a POST is the response, following it would be a second request
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+
+        if (form != null) {
+            byte[] body = form.getBytes(StandardCharsets.US_ASCII);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+
+        int status = connection.getResponseCode();
+
+        // Read to the end so the connection goes back to the keep-alive cache
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in != null) {
+            byte[] buffer = new byte[8192];
+            try (InputStream body = in) {
+                while (body.read(buffer) >= 0) {
+                    // Discard
+                }
+            }
+        }
+        return status;
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, rows + 1);
+    }
+
+    private Map<String, Object> result(double rate, boolean poisson, int warmupSeconds, int seconds, int connections,
+                                       long scheduled, long measureStart, long end) {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("rate", rate);
+        settings.put("arrivals", poisson ? "poisson" : "uniform");
+        settings.put("warmupSeconds", warmupSeconds);
+        settings.put("seconds", seconds);
+        settings.put("connections", connections);
+        settings.put("rows", rows);
+        settings.put("executor", System.getProperty("todomvc.server.executor", "pool"));
+        settings.put("javaVersion", System.getProperty("java.version"));
+        settings.put("processors", Runtime.getRuntime().availableProcessors());
+
+        // Until the last recorded response, a server falling behind takes longer than the schedule
+        double elapsedSeconds = Math.max(end, lastCompletion.get()) - measureStart;
+        elapsedSeconds /= TimeUnit.SECONDS.toNanos(1);
+
+        Map<String, Object> byOperation = new LinkedHashMap<>();
+        for (Operation operation : operations) {
+            byOperation.put(operation.name, operation.summary(elapsedSeconds));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("settings", settings);
+        result.put("scheduled", scheduled);
+        result.put("total", summary(totalLatency.snapshot(), totalServiceTime.snapshot(), totalErrors.sum(), elapsedSeconds));
+        result.put("operations", byOperation);
+        return result;
+    }
+
+    private static Map<String, Object> summary(LatencyHistogram.Snapshot latency, LatencyHistogram.Snapshot serviceTime,
+                                               long errors, double elapsedSeconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", latency.getCount());
+        summary.put("errors", errors);
+        summary.put("throughput", elapsedSeconds > 0 ? latency.getCount() / elapsedSeconds : 0.0);
+        summary.put("latencyMillis", percentiles(latency));
+        summary.put("serviceTimeMillis", percentiles(serviceTime));
+        return summary;
+    }
+
+    private static Map<String, Object> percentiles(LatencyHistogram.Snapshot snapshot) {
+        Map<String, Object> percentiles = new LinkedHashMap<>();
+        for (double percentile : PERCENTILES) {
+            String name = "p" + Double.toString(percentile * 100).replaceAll("\\.?0+$", "");
+            percentiles.put(name, snapshot.getValue(percentile) / 1e6);
+        }
+        percentiles.put("max", snapshot.getMax() / 1e6);
+        percentiles.put("mean", snapshot.getCount() == 0 ? 0.0 : snapshot.getSum() / 1e6 / snapshot.getCount());
+        return percentiles;
+    }
+
+    private static final class Operation {
+
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        Operation(String name) {
+            switch (name) {
+                case "index":
+                case "create":
+                case "toggle":
+                case "delete":
+                case "clear":
+                    this.name = name;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown request " + name
+                            + " in the mix, expected index, create, toggle, delete or clear");
+            }
+        }
+
+        int request(LoadDriver driver) throws IOException {
+            switch (name) {
+                case "index":
+                    return driver.get("/todos");
+                case "create":
+                    return driver.post("/todos", "new-todo=Load+test+todo");
+                case "toggle":
+                    return driver.post("/toggleStatus", "todo-id=" + driver.randomId());
+                case "delete":
+                    return driver.post("/deleteTodo", "todo-id=" + driver.randomId());
+                default:
+                    return driver.post("/clearTodo", "");
+            }
+        }
+
+        void record(long latencyNanos, long serviceNanos, boolean ok) {
+            latency.record(latencyNanos);
+            serviceTime.record(serviceNanos);
+            if (!ok) {
+                errors.increment();
+            }
+        }
+
+        Map<String, Object> summary(double elapsedSeconds) {
+            return LoadDriver.summary(latency.snapshot(), serviceTime.snapshot(), errors.sum(), elapsedSeconds);
+        }
+    }
+}
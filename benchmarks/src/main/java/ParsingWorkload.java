@@ -0,0 +1,74 @@
+import todomvc.benchmarks.Workloads;
+
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs {@link FormDecoder}, and the parsing it replaced, for {@code todomvc.benchmarks.ParsingBenchmark}.
+ */
+public class ParsingWorkload implements Workloads.Parsing {
+
+    @Override
+    public Object decodeQuery(String rawQuery) {
+        Parameters parameters = new Parameters();
+        FormDecoder.decodeQuery(rawQuery, parameters);
+        return parameters;
+    }
+
+    @Override
+    public Object decodeBody(byte[] body) {
+        Parameters parameters = new Parameters();
+        FormDecoder.decode(body, 0, body.length, parameters);
+        return parameters;
+    }
+
+    /**
+     * The parsing {@code JdkHttpServerParamsFilter} used to do, kept verbatim
+     * as the baseline.
+     */
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Object legacyDecode(String query) throws Exception {
+        Map parameters = new HashMap();
+
+        if (query != null) {
+            String pairs[] = query.split("[&]");
+
+            for (String pair : pairs) {
+                String param[] = pair.split("[=]");
+
+                String key = null;
+                String value = null;
+                if (param.length > 0) {
+                    key = URLDecoder.decode(param[0],
+                            System.getProperty("file.encoding"));
+                }
+
+                if (param.length > 1) {
+                    value = URLDecoder.decode(param[1],
+                            System.getProperty("file.encoding"));
+                }
+
+                if (parameters.containsKey(key)) {
+                    Object obj = parameters.get(key);
+                    if(obj instanceof List) {
+                        List values = (List)obj;
+                        values.add(value);
+                    } else if(obj instanceof String) {
+                        List values = new ArrayList();
+                        values.add((String)obj);
+                        values.add(value);
+                        parameters.put(key, values);
+                    }
+                } else {
+                    parameters.put(key, value);
+                }
+            }
+        }
+
+        return parameters;
+    }
+}
@@ -0,0 +1,42 @@
+import com.github.mustachejava.Mustache;
+import todomvc.benchmarks.Workloads;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders the index page the way {@link JdkHttpServer} does for a page of
+ * todos, for {@code todomvc.benchmarks.RenderingBenchmark}.
+ */
+public class RenderingWorkload implements Workloads.Rendering {
+
+    private static final String INDEX_TEMPLATE = "template.mustache";
+
+    private Mustache mustache;
+    private Map<String, Object> scopes;
+
+    @Override
+    public void setUp(int todos) {
+        mustache = new TemplateRegistry(null, INDEX_TEMPLATE).get(INDEX_TEMPLATE);
+
+        List<Todo> page = new ArrayList<>(todos);
+        for (long id = 1; id <= todos; id++) {
+            Todo.Status status = id % 2 == 0 ? Todo.Status.COMPLETED : Todo.Status.ACTIVE;
+            page.add(new Todo(id, "Todo number " + id + " <with & escaping>", status));
+        }
+
+        scopes = JdkHttpServer.indexScopes(new TodoIndex(page, (todos + 1) / 2, todos / 2, (long) todos, null), todos);
+    }
+
+    @Override
+    public int render() throws Exception {
+        ResponseBuffer body = ResponseBuffer.body();
+        Writer writer = new OutputStreamWriter(body, StandardCharsets.UTF_8);
+        mustache.execute(writer, scopes).flush();
+        return body.size();
+    }
+}
@@ -0,0 +1,251 @@
+import org.apache.commons.dbcp2.BasicDataSource;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Checks that {@link EmbeddedRepository} behaves as {@link RdbmsRepository}
+ * on an in-memory H2 database: runs the same random operations on both,
+ * over a few lists and a small range of ids so they keep running into each
+ * other, and compares every result. Then checks that the embedded store
+ * recovers its todos after a crash, from the log alone, from a snapshot and
+ * the log, and with the last record of the log torn.
+ *
+ * Exits with status 1 if anything differs.
+ *
+ * <pre>
+ * mvn -f benchmarks/pom.xml package
+ * java -cp benchmarks/target/benchmarks.jar RepositoryEquivalenceCheck
+ * </pre>
+ *
+ * Settings, as system properties:
+ * <ul>
+ *     <li>{@code todomvc.check.operations} random operations, 4000 by default</li>
+ *     <li>{@code todomvc.check.seed} seed of the operations, random by default</li>
+ * </ul>
+ */
+public class RepositoryEquivalenceCheck {
+
+    private static final int LISTS = 3;
+    private static final int IDS = 60;
+
+    private int checks;
+    private int failures;
+
+    public static void main(String[] args) throws Exception {
+        int operations = Integer.getInteger("todomvc.check.operations", 4000);
+        long seed = Long.getLong("todomvc.check.seed", new Random().nextLong());
+
+        RepositoryEquivalenceCheck check = new RepositoryEquivalenceCheck();
+        Path directory = Files.createTempDirectory("todomvc-check");
+        BasicDataSource dataSource = BenchmarkDatabase.create("check");
+        try {
+            List<List<Todo>> crashed = check.compare(new RdbmsRepository(dataSource, 7), directory, operations, seed);
+            check.recover(directory, crashed);
+        } finally {
+            BenchmarkDatabase.drop(dataSource);
+            delete(directory);
+        }
+
+        Log.info("{} checks, {} failed, seed {}", check.checks, check.failures, seed);
+        Log.flush(1000);
+        System.exit(check.failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * @return the todos of every list, as the embedded store left them
+     */
+    private List<List<Todo>> compare(Repository rdbms, Path directory, int operations, long seed) throws IOException {
+        EmbeddedStore store = EmbeddedStore.open(directory, 16, 1 << 17, true);
+        Repository embedded = new EmbeddedRepository(store);
+        Random random = new Random(seed);
+
+        for (int step = 0; step < operations; step++) {
+            long list = random.nextInt(LISTS);
+            long id = 1 + random.nextInt(IDS);
+            Todo.Status status = random.nextBoolean() ? Todo.Status.ACTIVE : Todo.Status.COMPLETED;
+            Todo.Status other = status == Todo.Status.ACTIVE ? Todo.Status.COMPLETED : Todo.Status.ACTIVE;
+            // Some names outside of ASCII, stored as more UTF-8 bytes than characters
+            String name = "todo " + random.nextInt(1000) + (random.nextInt(10) == 0 ? " é✓" : "");
+            int operation = random.nextInt(18);
+
+            Function<Repository, Object> work;
+            switch (operation) {
+                case 0:
+                    work = repository -> repository.save(new Todo(id, name, status));
+                    break;
+                case 1:
+                    work = repository -> Arrays.toString(repository.saveAll(Arrays.asList(
+                            new Todo(id, name, status), new Todo(id + 1, name + " too", status))));
+                    break;
+                case 2:
+                    work = repository -> repository.toggleStatus(id);
+                    break;
+                case 3:
+                    work = repository -> repository.updateStatus(
+                            TodoCriteria.withStatus(other).andIdBetween(id, id + 10), status);
+                    break;
+                case 4:
+                    work = repository -> repository.delete(id);
+                    break;
+                case 5:
+                    work = repository -> Arrays.toString(repository.deleteAllById(new long[] {id, id + 2, IDS * 10}));
+                    break;
+                case 6:
+                    work = repository -> repository.deleteBy(todo -> todo.getTodo().endsWith("7"));
+                    break;
+                case 7:
+                    work = repository -> repository.deleteBy(TodoCriteria.withStatus(status).andIdBetween(id, id + 3));
+                    break;
+                case 8:
+                    work = repository -> Arrays.toString(repository.writeAll(Arrays.asList(
+                            TodoWrite.save(new Todo(id, name, status)), TodoWrite.toggle(id),
+                            TodoWrite.toggle(id + 5), TodoWrite.delete(id + 1))));
+                    break;
+                case 9:
+                    work = repository -> describe(repository.findIndex(PageRequest.first(1 + (int) (id % 7))));
+                    break;
+                case 10:
+                    work = repository -> describe(repository.findIndex(PageRequest.after(id, 5)));
+                    break;
+                case 11:
+                    work = repository -> describe(repository.findIndex(PageRequest.before(id, 5)));
+                    break;
+                case 12:
+                    work = repository -> repository.findAll(TodoCriteria.withIds(id, id + 1, id + 40).andStatus(status));
+                    break;
+                case 13:
+                    work = repository -> repository.findAll(TodoCriteria.all().andNameContains("1").andIdBetween(null, id));
+                    break;
+                case 14:
+                    work = RepositoryEquivalenceCheck::describeCursor;
+                    break;
+                case 15:
+                    work = repository -> repository.inTransaction(transaction -> {
+                        transaction.save(new Todo(id, name, status));
+                        transaction.toggleStatus(id);
+                        return transaction.findOne(id) + " " + transaction.count();
+                    });
+                    break;
+                case 16:
+                    // Rolled back, the todo without a name cannot be saved
+                    work = repository -> repository.inTransaction(transaction -> {
+                        transaction.delete(id);
+                        transaction.save(new Todo(id + 3, null, status));
+                        return "committed";
+                    });
+                    break;
+                default:
+                    work = repository -> repository.count() + " " + repository.findOne(id) + " "
+                            + repository.exists(id) + " " + describe(repository.findIndex());
+                    break;
+            }
+
+            String what = "step " + step + ", operation " + operation + ", list " + list + ", id " + id;
+            check(what, work.apply(rdbms.forList(list)), work.apply(embedded.forList(list)));
+
+            if (random.nextInt(500) == 0) {
+                rdbms.forList(list).deleteAll();
+                embedded.forList(list).deleteAll();
+            }
+            if (random.nextInt(700) == 0) {
+                store.snapshot();
+            }
+        }
+
+        List<List<Todo>> todos = new ArrayList<>();
+        for (long list = 0; list < LISTS; list++) {
+            todos.add(embedded.forList(list).findAll());
+            check("todos of list " + list, rdbms.forList(list).findAll(), todos.get((int) list));
+        }
+        // Not closed, as if the process crashed, recover() opens it again
+        return todos;
+    }
+
+    private void recover(Path directory, List<List<Todo>> crashed) throws IOException {
+        // From the snapshot, if one was written, and the log
+        EmbeddedStore store = EmbeddedStore.open(directory, 16, 1 << 17, true);
+        for (long list = 0; list < LISTS; list++) {
+            check("recovered todos of list " + list, crashed.get((int) list), todosOf(store, list));
+        }
+        new EmbeddedRepository(store).forList(1).save(new Todo(1000L, "written after recovering", Todo.Status.ACTIVE));
+        store.close();
+
+        // From the snapshot written on closing
+        store = EmbeddedStore.open(directory, 16, 1 << 17, true);
+        check("todo written after recovering", "written after recovering", name(store.get(1, 1000L)));
+        Repository repository = new EmbeddedRepository(store).forList(2);
+        repository.save(new Todo(1001L, "kept", Todo.Status.ACTIVE));
+        repository.save(new Todo(1002L, "torn", Todo.Status.ACTIVE));
+
+        // The last record cut short, as by a crash while writing it
+        List<Long> segments = WriteAheadLog.segments(directory);
+        Path last = WriteAheadLog.pathOf(directory, segments.get(segments.size() - 1));
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        store = EmbeddedStore.open(directory, 16, 1 << 17, true);
+        check("todo before the torn record", "kept", name(store.get(2, 1001L)));
+        check("todo of the torn record", "null", name(store.get(2, 1002L)));
+        store.close();
+    }
+
+    // Read from the store, an EmbeddedRepository would clear the default list
+    private static List<Todo> todosOf(EmbeddedStore store, long list) {
+        List<Todo> todos = new ArrayList<>();
+        EmbeddedStore.ListIndex index = store.index(list);
+        for (int i = index == null ? -1 : index.size() - 1; i >= 0; i--) {
+            todos.add(store.get(list, index.id(i)));
+        }
+        return todos;
+    }
+
+    private static String name(Todo todo) {
+        return todo == null ? "null" : todo.getTodo();
+    }
+
+    private static String describe(TodoIndex index) {
+        return index.getTodos() + ", active " + index.getActiveCount() + ", completed " + index.getCompletedCount()
+                + ", next after " + index.getNextAfter() + ", previous before " + index.getPreviousBefore();
+    }
+
+    private static String describeCursor(Repository repository) {
+        List<Todo> todos = new ArrayList<>();
+        try (TodoCursor cursor = repository.openIndex()) {
+            for (Todo todo : cursor) {
+                todos.add(todo);
+            }
+            return todos + ", active " + cursor.getActiveCount() + ", completed " + cursor.getCompletedCount();
+        } catch (Exception e) {
+            return "failed: " + e.getMessage();
+        }
+    }
+
+    private void check(String what, Object expected, Object actual) {
+        checks++;
+        if (!Objects.equals(String.valueOf(expected), String.valueOf(actual))) {
+            failures++;
+            Log.error("Differs at {}:\n  rdbms    {}\n  embedded {}", what, expected, actual);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,53 @@
+import org.apache.commons.dbcp2.BasicDataSource;
+import todomvc.benchmarks.Workloads;
+
+/**
+ * Runs {@link RdbmsRepository} for {@code todomvc.benchmarks.RepositoryBenchmark}.
+ */
+public class RepositoryWorkload implements Workloads.Repository {
+
+    private BasicDataSource dataSource;
+    private RdbmsRepository repository;
+
+    @Override
+    public void setUp(int rows) throws Exception {
+        dataSource = BenchmarkDatabase.create("repository" + rows);
+        repository = new RdbmsRepository(dataSource);
+        BenchmarkDatabase.load(repository, rows);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        BenchmarkDatabase.drop(dataSource);
+    }
+
+    @Override
+    public long count() {
+        return repository.count();
+    }
+
+    @Override
+    public Object findOne(long id) {
+        return repository.findOne(id);
+    }
+
+    @Override
+    public Object findFirstPage(int limit) {
+        return repository.findIndex(PageRequest.first(limit));
+    }
+
+    @Override
+    public Object findPageAfter(long id, int limit) {
+        return repository.findIndex(PageRequest.after(id, limit));
+    }
+
+    @Override
+    public Object save(long id, String title) {
+        return repository.save(new Todo(id, title));
+    }
+
+    @Override
+    public Object toggleStatus(long id) {
+        return repository.toggleStatus(id);
+    }
+}
@@ -0,0 +1,37 @@
+import org.apache.commons.dbcp2.BasicDataSource;
+import todomvc.benchmarks.Workloads;
+
+/**
+ * Runs {@link Application#dispatchControl} for
+ * {@code todomvc.benchmarks.RoutingBenchmark}.
+ */
+public class RoutingWorkload implements Workloads.Routing {
+
+    private BasicDataSource dataSource;
+    private Application application;
+
+    @Override
+    public void setUp(int rows) throws Exception {
+        dataSource = BenchmarkDatabase.create("routing" + rows);
+        RdbmsRepository repository = new RdbmsRepository(dataSource);
+        BenchmarkDatabase.load(repository, rows);
+        application = new Application(repository);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        BenchmarkDatabase.drop(dataSource);
+    }
+
+    @Override
+    public Object parameters(String rawQuery) {
+        Parameters parameters = new Parameters();
+        FormDecoder.decodeQuery(rawQuery, parameters);
+        return parameters;
+    }
+
+    @Override
+    public Object dispatch(String method, String path, Object parameters) {
+        return application.dispatchControl(method, path, (Parameters) parameters);
+    }
+}
@@ -0,0 +1,66 @@
+package todomvc.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the query strings and form bodies the application receives.
+ *
+ * {@code JdkHttpServerParamsFilter} no longer parses by itself, it hands the
+ * raw query and the body bytes to {@code FormDecoder}, which is measured here
+ * against the parsing it replaced, {@link #legacyDecode()}. The bytes
+ * allocated per operation are reported by the GC profiler, {@code -prof gc},
+ * which {@link BenchmarkMain} adds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class ParsingBenchmark {
+
+    @Param({
+            "todo-id=1296307429557927936",
+            "new-todo=Buy+milk+and+eggs",
+            "new-todo=W%C3%A4sche+waschen+%26+b%C3%BCgeln",
+            "after=1296307429557927936&limit=100",
+    })
+    public String input;
+
+    private Workloads.Parsing parsing;
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        parsing = Workloads.create("ParsingWorkload", Workloads.Parsing.class);
+        body = input.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public Object decodeQuery() {
+        return parsing.decodeQuery(input);
+    }
+
+    @Benchmark
+    public Object decodeBody() {
+        return parsing.decodeBody(body);
+    }
+
+    @Benchmark
+    public Object legacyDecode() throws Exception {
+        return parsing.legacyDecode(input);
+    }
+}
@@ -0,0 +1,44 @@
+package todomvc.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of the index page for pages of todos, into the thread's reused
+ * response buffer as the server does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Thread)
+public class RenderingBenchmark {
+
+    @Param({"0", "20", "100", "1000"})
+    public int todos;
+
+    private Workloads.Rendering rendering;
+
+    @Setup
+    public void setUp() throws Exception {
+        rendering = Workloads.create("RenderingWorkload", Workloads.Rendering.class);
+        rendering.setUp(todos);
+    }
+
+    @Benchmark
+    public int renderIndex() throws Exception {
+        return rendering.render();
+    }
+}
@@ -0,0 +1,86 @@
+package todomvc.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repository operations against H2 in MySQL mode, by table size.
+ *
+ * Ids are picked at random so lookups do not keep hitting the same pages.
+ * Writes leave the number of rows unchanged, the table stays the same size
+ * across iterations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private Workloads.Repository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        repository = Workloads.create("RepositoryWorkload", Workloads.Repository.class);
+        repository.setUp(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        repository.tearDown();
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, rows + 1);
+    }
+
+    @Benchmark
+    public long count() {
+        return repository.count();
+    }
+
+    @Benchmark
+    public Object findOne() {
+        return repository.findOne(randomId());
+    }
+
+    @Benchmark
+    public Object findFirstPage() {
+        return repository.findFirstPage(PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Object findPageAfter() {
+        return repository.findPageAfter(randomId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Object save() {
+        return repository.save(randomId(), "Renamed todo");
+    }
+
+    @Benchmark
+    public Object toggleStatus() {
+        return repository.toggleStatus(randomId());
+    }
+}
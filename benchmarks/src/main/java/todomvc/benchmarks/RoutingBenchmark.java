@@ -0,0 +1,81 @@
+package todomvc.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatching requests to the application's actions, over a database of 1k
+ * todos.
+ *
+ * The 404 and 405 cases never reach the repository and so measure routing
+ * alone, the others include the queries of the action routed to.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class RoutingBenchmark {
+
+    private static final int ROWS = 1000;
+
+    private Workloads.Routing routing;
+    private Object none;
+    private Object firstPage;
+    private Object toggle;
+    private String togglePath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        routing = Workloads.create("RoutingWorkload", Workloads.Routing.class);
+        routing.setUp(ROWS);
+
+        none = routing.parameters(null);
+        firstPage = routing.parameters("limit=20");
+        toggle = routing.parameters("todo-id=" + ROWS / 2);
+        togglePath = "/todos/" + ROWS / 2 + "/toggle";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        routing.tearDown();
+    }
+
+    @Benchmark
+    public Object notFound() {
+        return routing.dispatch("GET", "/todos/42/edit", none);
+    }
+
+    @Benchmark
+    public Object methodNotAllowed() {
+        return routing.dispatch("DELETE", "/todos", none);
+    }
+
+    @Benchmark
+    public Object index() {
+        return routing.dispatch("GET", "/", firstPage);
+    }
+
+    @Benchmark
+    public Object toggleByPath() {
+        return routing.dispatch("POST", togglePath, none);
+    }
+
+    @Benchmark
+    public Object toggleByParameter() {
+        return routing.dispatch("POST", "/toggleStatus", toggle);
+    }
+}
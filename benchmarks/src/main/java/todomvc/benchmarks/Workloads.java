@@ -0,0 +1,94 @@
+package todomvc.benchmarks;
+
+/**
+ * The application's classes are in the default package, which JMH does not
+ * allow benchmarks in and which named packages cannot import. Each benchmark
+ * therefore drives the application through one of these interfaces, whose
+ * implementation lives in the default package and is loaded by name.
+ */
+public final class Workloads {
+
+    private Workloads() {
+    }
+
+    static <T> T create(String className, Class<T> type) {
+        try {
+            return type.cast(Class.forName(className).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create workload " + className, e);
+        }
+    }
+
+    /**
+     * {@code RdbmsRepository} over an in-memory H2 database in MySQL mode.
+     */
+    public interface Repository {
+
+        /**
+         * Creates the schema and loads todos with the ids {@code 1} to
+         * {@code rows}, every other one completed.
+         */
+        void setUp(int rows) throws Exception;
+
+        void tearDown() throws Exception;
+
+        long count();
+
+        Object findOne(long id);
+
+        Object findFirstPage(int limit);
+
+        Object findPageAfter(long id, int limit);
+
+        Object save(long id, String title);
+
+        Object toggleStatus(long id);
+    }
+
+    /**
+     * {@code FormDecoder}, as run by {@code JdkHttpServerParamsFilter}.
+     */
+    public interface Parsing {
+
+        Object decodeQuery(String rawQuery);
+
+        Object decodeBody(byte[] body);
+
+        /**
+         * The split and {@code URLDecoder} based parsing FormDecoder
+         * replaced, as the baseline.
+         */
+        Object legacyDecode(String rawQuery) throws Exception;
+    }
+
+    /**
+     * {@code Application.dispatchControl} over a small database.
+     */
+    public interface Routing {
+
+        void setUp(int rows) throws Exception;
+
+        void tearDown() throws Exception;
+
+        /**
+         * @return the decoded parameters to pass to {@link #dispatch}, so
+         *         decoding is not part of what is measured
+         */
+        Object parameters(String rawQuery);
+
+        Object dispatch(String method, String path, Object parameters);
+    }
+
+    /**
+     * Rendering of the index page into the response buffer.
+     */
+    public interface Rendering {
+
+        void setUp(int todos) throws Exception;
+
+        /**
+         * @return the number of bytes rendered
+         */
+        int render() throws Exception;
+    }
+}
@@ -7,9 +7,20 @@ CREATE DATABASE todomvc
 
 USE todomvc;
 
+-- Clustered by list, so the todos of a list are stored together
 CREATE TABLE IF NOT EXISTS `todos` (
-  `id`     BIGINT UNSIGNED NOT NULL,
-  `name`   VARCHAR(255)    NOT NULL,
-  `status` VARCHAR(255)    NOT NULL,
-  PRIMARY KEY (`id`)
-) ENGINE = InnoDB;
\ No newline at end of file
+  `list_id` BIGINT UNSIGNED NOT NULL DEFAULT 0,
+  `id`      BIGINT UNSIGNED NOT NULL,
+  `name`    VARCHAR(255)    NOT NULL,
+  `status`  VARCHAR(255)    NOT NULL,
+  PRIMARY KEY (`list_id`, `id`),
+  KEY `idx_todos_list_status_id` (`list_id`, `status`, `id`)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS `id_sequences` (
+  `name`    VARCHAR(64)     NOT NULL,
+  `next_hi` BIGINT UNSIGNED NOT NULL,
+  PRIMARY KEY (`name`)
+) ENGINE = InnoDB;
+
+INSERT INTO `id_sequences` (`name`, `next_hi`) VALUES ('todos', 0);
\ No newline at end of file
@@ -0,0 +1,42 @@
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * Logs every exchange with its status, body size and duration through
+ * {@link Log#access(String, String, int, long, long)}, including exchanges
+ * answered by later filters.
+ */
+public class AccessLogFilter extends Filter {
+
+    @Override
+    public String description() {
+        return "Logs served requests";
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            Log.access(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                    exchange.getResponseCode(), contentLength(exchange), System.nanoTime() - start);
+        }
+    }
+
+    // Streamed responses are chunked and have no length
+    private static long contentLength(HttpExchange exchange) {
+        String length = exchange.getResponseHeaders().getFirst("Content-length");
+        if (length == null) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(length);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -1,102 +1,208 @@
-import com.sun.javaws.exceptions.InvalidArgumentException;
-
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 public class Application implements Controller {
 
-    private final RdbmsRepository repository;
+    /**
+     * Todos shown per page unless requested otherwise, {@code 0} shows all.
+     */
+    private static final long DEFAULT_PAGE_SIZE = Integer.getInteger("todomvc.page.size", 100);
+    static final int MAX_PAGE_SIZE = Integer.getInteger("todomvc.page.maxSize", 1000);
+
+    private final VersionedRepository repository;
+    private final IdGenerator idGenerator;
+    private final TodoApi api;
+    private final Router<Action> routes;
+    private final Action index = (attributes, list, params, match) -> handleIndex(attributes, list, params);
+
+    public Application(Repository repo) {
+        this(repo, SnowflakeIdGenerator.DEFAULT);
+    }
 
-    public Application(RdbmsRepository repo) {
-        repository = repo;
+    public Application(Repository repo, IdGenerator ids) {
+        // Writes of the API count too, it gets the same repository
+        repository = new VersionedRepository(repo);
+        idGenerator = ids;
+        api = new TodoApi(repository, ids);
+        routes = createRoutes();
         this.insertDummyTodos();
     }
 
+    public TodoApi getApi() {
+        return api;
+    }
+
     private void insertDummyTodos() {
-        Todo first = new Todo("Learn Servlets");
-        Todo second = new Todo(first.getId() + 1, "Completed", Todo.Status.COMPLETED);
+        long[] ids = idGenerator.nextIds(2);
+        Todo first = new Todo(ids[0], "Learn Servlets");
+        Todo second = new Todo(ids[1], "Completed", Todo.Status.COMPLETED);
 
-        repository.save(first);
-        repository.save(second);
-        
-        System.out.println("Inserted " + repository.count() + " dummy todos");
+        repository.saveAll(Arrays.asList(first, second));
+
+        Log.info("Inserted {} dummy todos", repository.count());
     }
 
-    public Map<String, Collection<Todo>> handle(String requestMethod, String requestUri, Map<String, String> params) throws InvalidArgumentException {
-        return dispatchControl(requestMethod, requestUri, params);
+    /**
+     * Tells whether a request renders the index and, if so, the version of
+     * the data it renders. The same version means the same page, as long as
+     * the request and the templates are the same, so it can be answered
+     * without querying the repository again.
+     *
+     * @return the version of the data or {@code -1} if the request is not
+     *         for the index
+     */
+    public long getIndexVersion(String requestMethod, String requestUri) {
+        Router.Match<Action> match = routes.match(requestMethod, requestUri);
+        return match.getHandler() == index ? repository.getVersion() : -1;
     }
 
-    Map<String, Collection<Todo>> dispatchControl(String requestMethod, String command, Map<String, String> params) throws InvalidArgumentException {
-        Map<String, Collection<Todo>> attributes = new HashMap<>();
+    /**
+     * @return the pattern of the route the request takes, for metrics and
+     *         logs, or {@code null} if there is none
+     */
+    public String getRoute(String requestMethod, String requestUri) {
+        return routes.match(requestMethod, requestUri).getPattern();
+    }
 
-        System.out.println("Request method: " + requestMethod);
-        System.out.println("Request route: " + command);
-        System.out.println("Params: " + params.toString());
+    public Map<String, Object> handle(String requestMethod, String requestUri, Parameters params) {
+        return dispatchControl(requestMethod, requestUri, params);
+    }
 
-        if (route(requestMethod, command, "GET", "/todos") || route(requestMethod, command, "GET", "/")) {
-            handleIndex(attributes);
+    /**
+     * Runs the action routed to, the attributes carry a {@code status} of
+     * {@code 404} or {@code 405}, with the {@code allow}ed methods, if there
+     * is none, and the pattern of the {@code route}. Routes under
+     * {@code /lists/{listId}} act on that list, the others on the default
+     * list, the attributes carry the {@code listPath} the pages of the list
+     * are under, empty for the default list.
+     */
+    Map<String, Object> dispatchControl(String requestMethod, String command, Parameters params) {
+        Map<String, Object> attributes = new HashMap<>();
+
+        Router.Match<Action> match = routes.match(requestMethod, command);
+        attributes.put("route", match.getPattern());
+        if (match.getHandler() == null) {
+            attributes.put("status", match.getStatus());
+            attributes.put("allow", match.getAllowedMethods());
             return attributes;
         }
 
-        if (route(requestMethod, command, "POST", "/todos") || route(requestMethod, command, "POST", "/")) {
-            handleCreate(params.get("new-todo"));
-            return attributes;
-        }
+        Repository list = repository;
+        String listPath = "";
 
-        if (route(requestMethod, command, "POST", "/toggleStatus")) {
-            handleToggle(params.get("todo-id"));
-            return attributes;
-        }
+        String listParam = match.getParam("listId");
+        if (listParam != null) {
+            Long listId = parseOrDefault(listParam, null);
+            if (listId == null || listId < 0) {
+                attributes.put("status", 404);
+                return attributes;
+            }
 
-        if (route(requestMethod, command, "POST", "/deleteTodo")) {
-            handleDelete(params.get("todo-id"));
-            return attributes;
+            list = repository.forList(listId);
+            listPath = "/lists/" + listId;
         }
+        attributes.put("listPath", listPath);
 
-        if (route(requestMethod, command, "POST", "/clearTodo")) {
-            handleClear();
-            return attributes;
-        }
+        match.getHandler().handle(attributes, list, params, match);
+        return attributes;
+    }
 
-        return attributes; // TODO: Handle 404 better
+    @FunctionalInterface
+    private interface Action {
+        void handle(Map<String, Object> attributes, Repository list, Parameters params, Router.Match<Action> match);
     }
 
-    private boolean route(String requestMethod, String route, String expectedMethod, String expectedRoute) {
-        return expectedMethod.equalsIgnoreCase(requestMethod) && expectedRoute.equalsIgnoreCase(route);
+    private Router<Action> createRoutes() {
+        Action create = (attributes, list, params, match) -> handleCreate(list, params.get("new-todo"));
+        Action toggle = (attributes, list, params, match) -> handleToggle(attributes, list, match.getParam("id"));
+        Action delete = (attributes, list, params, match) -> handleDelete(attributes, list, match.getParam("id"));
+        Action toggleAll = (attributes, list, params, match) -> handleToggleAll(list, params.get("completed"));
+        Action clear = (attributes, list, params, match) -> handleClear(list);
+
+        return new Router<Action>()
+                .add("GET", "/", index)
+                .add("GET", "/todos", index)
+                .add("POST", "/", create)
+                .add("POST", "/todos", create)
+                .add("POST", "/todos/{id}/toggle", toggle)
+                .add("POST", "/todos/{id}/delete", delete)
+                .add("POST", "/toggleStatus", (attributes, list, params, match) ->
+                        handleToggle(attributes, list, params.get("todo-id")))
+                .add("POST", "/deleteTodo", (attributes, list, params, match) ->
+                        handleDelete(attributes, list, params.get("todo-id")))
+                .add("POST", "/toggleAll", toggleAll)
+                .add("POST", "/clearTodo", clear)
+                .add("GET", "/lists/{listId}/todos", index)
+                .add("POST", "/lists/{listId}/todos", create)
+                .add("POST", "/lists/{listId}/todos/{id}/toggle", toggle)
+                .add("POST", "/lists/{listId}/todos/{id}/delete", delete)
+                .add("POST", "/lists/{listId}/toggleAll", toggleAll)
+                .add("POST", "/lists/{listId}/clearTodo", clear);
     }
 
-    private void handleClear() {
-        repository.deleteBy(t -> t.getStatus() == Todo.Status.COMPLETED);
+    private void handleToggleAll(Repository list, String completed) {
+        TodoApi.toggleAll(list, Boolean.parseBoolean(completed));
     }
 
-    private void handleIndex(Map<String, Collection<Todo>> attributes) {
-        Collection<Todo> all = repository.findAll();
-        List<Todo> completed = repository.findAllByStatus(entry -> entry.getValue().getStatus() == Todo.Status.COMPLETED);
+    private void handleClear(Repository list) {
+        list.deleteBy(TodoCriteria.withStatus(Todo.Status.COMPLETED));
+    }
+
+    private void handleIndex(Map<String, Object> attributes, Repository list, Parameters params) {
+        int limit = parseOrDefault(params.get("limit"), DEFAULT_PAGE_SIZE).intValue();
+        limit = Math.max(0, Math.min(limit, MAX_PAGE_SIZE));
+
+        Long after = parseOrDefault(params.get("after"), null);
+        Long before = parseOrDefault(params.get("before"), null);
+
+        PageRequest page = after != null ? PageRequest.after(after, limit)
+                : before != null ? PageRequest.before(before, limit)
+                : PageRequest.first(limit);
 
-        attributes.put("todos", all);
-        attributes.put("completed", completed);
+        if (page.isUnbounded()) {
+            // Rendered while read, the server closes the cursor when done
+            attributes.put("cursor", list.openIndex());
+        } else {
+            attributes.put("index", list.findIndex(page));
+            attributes.put("limit", limit);
+        }
     }
 
-    private void handleCreate(String s) {
-        Todo newTodo = new Todo(s);
+    private static Long parseOrDefault(String value, Long defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
 
-        repository.save(newTodo);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
-    private void handleDelete(String s) {
-        Long todoId = Long.parseLong(s);
-        repository.delete(todoId);
+    private void handleCreate(Repository list, String s) {
+        // Saved to the list, so put in it
+        Todo newTodo = new Todo(idGenerator.nextId(), s);
+
+        list.save(newTodo);
     }
 
-    private void handleToggle(String s) {
-        Long todoId = Long.parseLong(s);
-        Todo todo = repository.findOne(todoId);
-        Todo.Status toggledStatus = todo.getStatus() == Todo.Status.ACTIVE ? Todo.Status.COMPLETED : Todo.Status.ACTIVE;
+    private void handleDelete(Map<String, Object> attributes, Repository list, String s) {
+        Long todoId = parseOrDefault(s, null);
+        if (todoId == null) {
+            attributes.put("status", 404);
+            return;
+        }
+        list.delete(todoId);
+    }
 
-        // TODO: Don't create a new TODO, just allow status changes
-        Todo changedTodo = new Todo(todo, toggledStatus);
-        repository.save(changedTodo);
+    private void handleToggle(Map<String, Object> attributes, Repository list, String s) {
+        Long todoId = parseOrDefault(s, null);
+        if (todoId == null) {
+            attributes.put("status", 404);
+            return;
+        }
+        list.toggleStatus(todoId);
     }
 }
@@ -0,0 +1,402 @@
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Serves reads from memory, writing through to the wrapped repository.
+ *
+ * Two things are cached: single todos by id in a bounded LRU map, and an
+ * ordered snapshot of the full list. Every write goes to the wrapped
+ * repository first and then updates or invalidates the affected entries, so
+ * the cache never holds data that was not committed.
+ *
+ * Loads racing with a write are detected with a write counter and discarded
+ * instead of being cached.
+ *
+ * Only the default list is cached, the repositories of other lists are those
+ * of the wrapped repository.
+ */
+public class CachingRepository extends ForwardingRepository {
+
+    private final Object lock = new Object();
+    private final Map<Long, Todo> entries;
+
+    private volatile List<Todo> snapshot;
+    private long writes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingRepository(Repository delegate, final int maxEntries) {
+        super(delegate);
+
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache size must be positive, got " + maxEntries);
+        }
+
+        // Access ordered, so the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<Long, Todo>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Todo> eldest) {
+                if (size() > maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public long count() {
+        List<Todo> all = snapshot;
+        if (all != null) {
+            hits.increment();
+            return all.size();
+        }
+
+        misses.increment();
+        return delegate.count();
+    }
+
+    @Override
+    public List<Todo> findAll() {
+        List<Todo> all = snapshot;
+        if (all != null) {
+            hits.increment();
+            return all;
+        }
+
+        misses.increment();
+        long version = currentWrites();
+        List<Todo> loaded = Collections.unmodifiableList(delegate.findAll());
+
+        synchronized (lock) {
+            if (version == writes) {
+                snapshot = loaded;
+            }
+        }
+
+        return loaded;
+    }
+
+    @Override
+    public List<Todo> findAll(TodoCriteria criteria) {
+        List<Todo> all = snapshot;
+        if (all == null) {
+            misses.increment();
+            return delegate.findAll(criteria);
+        }
+
+        hits.increment();
+        return all.stream()
+                .filter(criteria)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public TodoIndex findIndex() {
+        return findIndex(PageRequest.unbounded());
+    }
+
+    @Override
+    public TodoIndex findIndex(PageRequest page) {
+        List<Todo> all = snapshot;
+        if (all != null) {
+            hits.increment();
+            return TodoIndex.of(all, page);
+        }
+
+        misses.increment();
+        if (!page.isUnbounded()) {
+            return delegate.findIndex(page);
+        }
+
+        long version = currentWrites();
+        TodoIndex index = delegate.findIndex();
+
+        synchronized (lock) {
+            if (version == writes) {
+                snapshot = Collections.unmodifiableList(index.getTodos());
+            }
+        }
+
+        return index;
+    }
+
+    @Override
+    public TodoCursor openIndex() {
+        List<Todo> all = snapshot;
+        if (all != null) {
+            hits.increment();
+            return TodoCursor.of(all);
+        }
+
+        // Streaming exists to avoid holding the whole list, so do not cache it
+        misses.increment();
+        return delegate.openIndex();
+    }
+
+    @Override
+    @Deprecated
+    public List<Todo> findAllByStatus(Predicate<Map.Entry<Long, Todo>> entryPredicate) {
+        return findAll()
+                .stream()
+                .filter(todo -> entryPredicate.test(new AbstractMap.SimpleImmutableEntry<>(todo.getId(), todo)))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Todo findOne(Long id) {
+        synchronized (lock) {
+            Todo cached = entries.get(id);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+
+        misses.increment();
+        long version = currentWrites();
+        Todo loaded = delegate.findOne(id);
+
+        if (loaded != null) {
+            synchronized (lock) {
+                if (version == writes) {
+                    entries.put(id, loaded);
+                }
+            }
+        }
+
+        return loaded;
+    }
+
+    @Override
+    public boolean exists(Long id) {
+        return null != findOne(id);
+    }
+
+    @Override
+    public Todo save(Todo entity) {
+        Todo saved = delegate.save(entity);
+
+        synchronized (lock) {
+            invalidateSnapshot();
+            if (saved != null) {
+                entries.put(saved.getId(), saved);
+            } else {
+                entries.remove(entity.getId());
+            }
+        }
+
+        return saved;
+    }
+
+    @Override
+    public int[] saveAll(Collection<Todo> entities) {
+        int[] counts = delegate.saveAll(entities);
+
+        synchronized (lock) {
+            invalidateSnapshot();
+            for (Todo todo : entities) {
+                entries.remove(todo.getId());
+            }
+        }
+
+        return counts;
+    }
+
+    @Override
+    public Todo toggleStatus(Long id) {
+        Todo toggled = delegate.toggleStatus(id);
+
+        synchronized (lock) {
+            invalidateSnapshot();
+            if (toggled != null) {
+                entries.put(id, toggled);
+            } else {
+                entries.remove(id);
+            }
+        }
+
+        return toggled;
+    }
+
+    @Override
+    public int updateStatus(TodoCriteria criteria, Todo.Status status) {
+        int updated = delegate.updateStatus(criteria, status);
+        // Cached entries still hold the old status, which the criteria matched
+        evictMatching(criteria);
+
+        return updated;
+    }
+
+    @Override
+    public int delete(Todo entity) {
+        return delete(entity.getId());
+    }
+
+    @Override
+    public Object[] writeAll(List<TodoWrite> writes) {
+        Object[] results = delegate.writeAll(writes);
+
+        synchronized (lock) {
+            invalidateSnapshot();
+            for (TodoWrite write : writes) {
+                entries.remove(write.getId());
+            }
+        }
+
+        return results;
+    }
+
+    /*
+     * The work runs on the wrapped repository, reading what the transaction
+     * sees rather than the cache. What it wrote is not known here, so all
+     * of the cache is dropped once it ends.
+     */
+    @Override
+    public <T> T inTransaction(Function<Repository, T> work) {
+        try {
+            return delegate.inTransaction(work);
+        } finally {
+            synchronized (lock) {
+                invalidateSnapshot();
+                entries.clear();
+            }
+        }
+    }
+
+    @Override
+    public Repository forList(long listId) {
+        return listId == Todo.DEFAULT_LIST ? this : delegate.forList(listId);
+    }
+
+    @Override
+    public int delete(Long id) {
+        int deleted = delegate.delete(id);
+
+        synchronized (lock) {
+            invalidateSnapshot();
+            entries.remove(id);
+        }
+
+        return deleted;
+    }
+
+    @Override
+    public int delete(Collection<Todo> entities) {
+        int deleted = delegate.delete(entities);
+
+        synchronized (lock) {
+            invalidateSnapshot();
+            for (Todo todo : entities) {
+                entries.remove(todo.getId());
+            }
+        }
+
+        return deleted;
+    }
+
+    @Override
+    public int[] deleteAllById(long[] ids) {
+        int[] counts = delegate.deleteAllById(ids);
+
+        synchronized (lock) {
+            invalidateSnapshot();
+            for (long id : ids) {
+                entries.remove(id);
+            }
+        }
+
+        return counts;
+    }
+
+    @Override
+    public int deleteBy(Predicate<Todo> predicate) {
+        int deleted = delegate.deleteBy(predicate);
+        evictMatching(predicate);
+
+        return deleted;
+    }
+
+    @Override
+    public int deleteBy(TodoCriteria criteria) {
+        int deleted = delegate.deleteBy(criteria);
+        evictMatching(criteria);
+
+        return deleted;
+    }
+
+    private void evictMatching(Predicate<Todo> predicate) {
+        synchronized (lock) {
+            invalidateSnapshot();
+            entries.values().removeIf(predicate);
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        delegate.deleteAll();
+        invalidateAll();
+    }
+
+    /**
+     * Drops everything cached, e.g. after the data was changed behind the
+     * back of this repository.
+     */
+    public void invalidateAll() {
+        synchronized (lock) {
+            invalidateSnapshot();
+            entries.clear();
+        }
+    }
+
+    // Must be called holding the lock, after the write reached the delegate
+    private void invalidateSnapshot() {
+        writes++;
+        snapshot = null;
+    }
+
+    private long currentWrites() {
+        synchronized (lock) {
+            return writes;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CachingRepository{" +
+                "size=" + size() +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", evictions=" + getEvictionCount() +
+                '}';
+    }
+}
@@ -0,0 +1,519 @@
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the todos in the process instead of a database, see
+ * {@link EmbeddedStore}, for running without MySQL.
+ *
+ * Behaves like {@link RdbmsRepository}: lists, pages, transactions and the
+ * failures it reports. Names of todos are required and at most
+ * {@value EmbeddedStore#MAX_NAME_LENGTH} characters, like the column. Like
+ * it, the default list starts out empty, other lists are kept.
+ *
+ * Every write is appended to the log and waits for it to be synced before
+ * returning. A transaction holds the write lock from start to end, so
+ * transactions run one at a time, and is logged as a single record, so it
+ * is replayed entirely or not at all.
+ */
+public class EmbeddedRepository implements Repository {
+
+    private final EmbeddedStore store;
+    private final long listId;
+
+    /**
+     * The transaction all operations run in or {@code null} if every
+     * operation runs on its own.
+     */
+    private final Transaction transaction;
+
+    public EmbeddedRepository(EmbeddedStore store) {
+        this(store, Todo.DEFAULT_LIST, null);
+        deleteAll();
+    }
+
+    private EmbeddedRepository(EmbeddedStore store, long listId, Transaction transaction) {
+        this.store = store;
+        this.listId = listId;
+        this.transaction = transaction;
+    }
+
+    @Override
+    public Repository forList(long listId) {
+        return listId == this.listId ? this : new EmbeddedRepository(store, listId, transaction);
+    }
+
+    private <T> T read(Supplier<T> reading) {
+        store.lock.readLock().lock();
+        try {
+            return reading.get();
+        } finally {
+            store.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the change and appends it to the log under the write lock, then
+     * waits for the log to be synced. Within a transaction the change is only
+     * recorded, the transaction logs it when it commits.
+     *
+     * @return the result of the change or the given failed result if it
+     *         could not be logged
+     */
+    private <T> T write(String operation, T failed, Function<EmbeddedStore.Change, T> changing) {
+        if (transaction != null) {
+            return changing.apply(transaction.change);
+        }
+
+        T result;
+        long position;
+
+        store.lock.writeLock().lock();
+        try {
+            EmbeddedStore.Change change = new EmbeddedStore.Change();
+            try {
+                result = changing.apply(change);
+            } catch (RuntimeException | Error e) {
+                store.rollback(change);
+                throw e;
+            }
+            position = store.commit(change);
+        } catch (IOException e) {
+            Log.error("{} failed, nothing was written: {}", operation, e.getMessage());
+            return failed;
+        } finally {
+            store.lock.writeLock().unlock();
+        }
+
+        return synced(operation, position) ? result : failed;
+    }
+
+    private boolean synced(String operation, long position) {
+        try {
+            store.sync(position);
+            return true;
+        } catch (IOException e) {
+            // Applied, but whether it survives a crash is not known
+            Log.error("{} failed, syncing the log failed: {}", operation, e.getMessage());
+            return false;
+        }
+    }
+
+    /*
+     * Operations in the transaction see its changes, other threads wait for
+     * the write lock and do not see them before it commits.
+     * @see https://martinfowler.com/eaaCatalog/unitOfWork.html
+     */
+    @Override
+    public <T> T inTransaction(Function<Repository, T> work) {
+        if (transaction != null) {
+            return work.apply(this);
+        }
+
+        T result;
+        long position;
+
+        store.lock.writeLock().lock();
+        try {
+            Transaction scope = new Transaction();
+            try {
+                result = work.apply(new EmbeddedRepository(store, listId, scope));
+            } catch (RuntimeException | Error e) {
+                store.rollback(scope.change);
+                throw e;
+            }
+
+            if (scope.failed) {
+                Log.warn("Rolling back a transaction, an operation in it failed");
+                store.rollback(scope.change);
+                return null;
+            }
+
+            position = store.commit(scope.change);
+        } catch (IOException e) {
+            Log.error("Transaction failed: {}", e.getMessage());
+            return null;
+        } finally {
+            store.lock.writeLock().unlock();
+        }
+
+        return synced("Transaction", position) ? result : null;
+    }
+
+    /**
+     * Tells whether the todos can be stored, logging why not and failing the
+     * transaction if they cannot.
+     */
+    private boolean valid(String operation, Collection<Todo> todos) {
+        for (Todo todo : todos) {
+            String name = todo.getTodo();
+            if (name == null || name.length() > EmbeddedStore.MAX_NAME_LENGTH) {
+                if (name == null) {
+                    Log.error("{} failed: todo {} has no name", operation, todo.getId());
+                } else {
+                    Log.error("{} failed: todo {} needs a name of at most {} characters, got {}",
+                            operation, todo.getId(), EmbeddedStore.MAX_NAME_LENGTH, name.length());
+                }
+                if (transaction != null) {
+                    transaction.failed = true;
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long count() {
+        return read(() -> {
+            EmbeddedStore.ListIndex index = store.index(listId);
+            return index == null ? 0L : index.size();
+        });
+    }
+
+    @Override
+    public List<Todo> findAll() {
+        return findAll(TodoCriteria.all());
+    }
+
+    @Override
+    public List<Todo> findAll(TodoCriteria criteria) {
+        TodoCriteria inList = criteria.andListId(listId);
+        return read(() -> {
+            List<Todo> todos = new ArrayList<>();
+            forEachMatching(inList, todos::add);
+            return todos;
+        });
+    }
+
+    /*
+     * Newest first, walking only the ids the criteria can match: the given
+     * ids or those in the range
+     */
+    private void forEachMatching(TodoCriteria criteria, Consumer<Todo> action) {
+        EmbeddedStore.ListIndex index = store.index(listId);
+        if (index == null) {
+            return;
+        }
+
+        long[] ids = criteria.getIds();
+        if (ids != null) {
+            for (int i = ids.length - 1; i >= 0; i--) {
+                Todo todo = store.get(listId, ids[i]);
+                if (todo != null && criteria.test(todo)) {
+                    action.accept(todo);
+                }
+            }
+            return;
+        }
+
+        int from = criteria.getMinId() == null ? 0 : index.lowerBound(criteria.getMinId());
+        int to = criteria.getMaxId() == null ? index.size() : index.upperBound(criteria.getMaxId());
+        for (int i = to - 1; i >= from; i--) {
+            Todo todo = store.get(listId, index.id(i));
+            if (criteria.test(todo)) {
+                action.accept(todo);
+            }
+        }
+    }
+
+    @Override
+    public TodoIndex findIndex() {
+        return findIndex(PageRequest.unbounded());
+    }
+
+    /*
+     * The same page as the SQL of RdbmsRepository reads: up to one todo more
+     * than the page holds, walking away from the cursor
+     */
+    @Override
+    public TodoIndex findIndex(PageRequest page) {
+        int fetch = page.getLimit() > 0 ? page.getLimit() + 1 : 0;
+
+        return read(() -> {
+            List<Todo> todos = new ArrayList<>();
+            EmbeddedStore.ListIndex index = store.index(listId);
+            if (index == null) {
+                return TodoIndex.ofFetched(todos, page, fetch, 0, 0);
+            }
+
+            int to = page.getAfter() != null ? index.lowerBound(page.getAfter()) : index.size();
+            if (page.getBefore() != null) {
+                for (int i = index.upperBound(page.getBefore()); i < to && (fetch == 0 || todos.size() < fetch); i++) {
+                    todos.add(store.get(listId, index.id(i)));
+                }
+                Collections.reverse(todos);
+            } else {
+                for (int i = to - 1; i >= 0 && (fetch == 0 || todos.size() < fetch); i--) {
+                    todos.add(store.get(listId, index.id(i)));
+                }
+            }
+
+            return TodoIndex.ofFetched(todos, page, fetch, index.getActiveCount(), index.getCompletedCount());
+        });
+    }
+
+    /*
+     * The ids and counts are copied when opening, the todos read while
+     * iterated: todos removed meanwhile are skipped, others show as they are
+     * when reached
+     */
+    @Override
+    public TodoCursor openIndex() {
+        return read(() -> {
+            EmbeddedStore.ListIndex index = store.index(listId);
+            if (index == null) {
+                return TodoCursor.of(Collections.<Todo>emptyList());
+            }
+            return new IdCursor(index.copyIds(), index.getActiveCount(), index.getCompletedCount());
+        });
+    }
+
+    private class IdCursor implements TodoCursor {
+
+        private final long[] ids;
+        private final long active;
+        private final long completed;
+
+        private boolean iterated;
+        private boolean closed;
+
+        IdCursor(long[] ids, long active, long completed) {
+            this.ids = ids;
+            this.active = active;
+            this.completed = completed;
+        }
+
+        @Override
+        public long getActiveCount() {
+            return active;
+        }
+
+        @Override
+        public long getCompletedCount() {
+            return completed;
+        }
+
+        @Override
+        public Iterator<Todo> iterator() {
+            if (iterated) {
+                throw new IllegalStateException("A cursor can only be iterated once");
+            }
+            iterated = true;
+
+            return new Iterator<Todo>() {
+                private int position = ids.length - 1;
+                private Todo next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && !closed && position >= 0) {
+                        long id = ids[position--];
+                        next = read(() -> store.get(listId, id));
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public Todo next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    Todo todo = next;
+                    next = null;
+                    return todo;
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Override
+    @Deprecated
+    public List<Todo> findAllByStatus(Predicate<Map.Entry<Long, Todo>> entryPredicate) {
+        return findAll()
+                .stream()
+                .filter(todo -> entryPredicate.test(new AbstractMap.SimpleImmutableEntry<>(todo.getId(), todo)))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Todo findOne(Long id) {
+        return read(() -> store.get(listId, id));
+    }
+
+    // Within a transaction the write lock is held, nothing changes the todo meanwhile
+    @Override
+    public Todo findOneForUpdate(Long id) {
+        return findOne(id);
+    }
+
+    @Override
+    public Todo save(Todo entity) {
+        if (!valid("Saving todo", Collections.singletonList(entity))) {
+            return null;
+        }
+
+        return write("Saving todo " + entity.getId(), null,
+                change -> store.put(change, listId, entity.getId(), entity.getStatus(), entity.getTodo()));
+    }
+
+    @Override
+    public int[] saveAll(Collection<Todo> entities) {
+        if (!valid("Saving collection of " + entities.size() + " todos", entities)) {
+            return null;
+        }
+
+        return write("Saving collection of " + entities.size() + " todos", null, change -> {
+            int[] counts = new int[entities.size()];
+            int i = 0;
+            for (Todo todo : entities) {
+                // As the upsert counts rows: 1 inserted, 2 overwritten
+                counts[i++] = store.contains(listId, todo.getId()) ? 2 : 1;
+                store.put(change, listId, todo.getId(), todo.getStatus(), todo.getTodo());
+            }
+            return counts;
+        });
+    }
+
+    @Override
+    public Todo toggleStatus(Long id) {
+        return write("Toggling todo " + id, null, change -> store.toggle(change, listId, id));
+    }
+
+    @Override
+    public int updateStatus(TodoCriteria criteria, Todo.Status status) {
+        TodoCriteria inList = criteria.andListId(listId);
+
+        return write("Updating status of todos by " + criteria, -1, change -> {
+            List<Todo> matching = new ArrayList<>();
+            forEachMatching(inList, matching::add);
+
+            for (Todo todo : matching) {
+                store.setStatus(change, listId, todo.getId(), status);
+            }
+            return matching.size();
+        });
+    }
+
+    @Override
+    public Object[] writeAll(List<TodoWrite> writes) {
+        List<Todo> saved = new ArrayList<>();
+        for (TodoWrite write : writes) {
+            if (write.getKind() == TodoWrite.Kind.SAVE) {
+                saved.add(write.getTodo());
+            }
+        }
+        if (!valid("Writing " + writes.size() + " todos in one transaction", saved)) {
+            return null;
+        }
+
+        return write("Writing " + writes.size() + " todos in one transaction", null, change -> {
+            Object[] results = new Object[writes.size()];
+            for (int i = 0; i < results.length; i++) {
+                TodoWrite write = writes.get(i);
+                switch (write.getKind()) {
+                    case SAVE:
+                        Todo todo = write.getTodo();
+                        results[i] = store.put(change, listId, todo.getId(), todo.getStatus(), todo.getTodo());
+                        break;
+                    case TOGGLE:
+                        results[i] = store.toggle(change, listId, write.getId());
+                        break;
+                    default:
+                        results[i] = store.remove(change, listId, write.getId()) ? 1 : 0;
+                        break;
+                }
+            }
+            return results;
+        });
+    }
+
+    @Override
+    public int delete(Todo entity) {
+        return delete(entity.getId());
+    }
+
+    @Override
+    public int delete(Long id) {
+        return write("Deleting todo " + id, -1, change -> store.remove(change, listId, id) ? 1 : 0);
+    }
+
+    @Override
+    public int delete(Collection<Todo> entities) {
+        long[] ids = new long[entities.size()];
+        int i = 0;
+        for (Todo todo : entities) {
+            ids[i++] = todo.getId();
+        }
+
+        int[] counts = deleteAllById(ids);
+        if (counts == null) {
+            return -1;
+        }
+
+        int deleted = 0;
+        for (int count : counts) {
+            deleted += count;
+        }
+        return deleted;
+    }
+
+    @Override
+    public int[] deleteAllById(long[] ids) {
+        return write("Deleting " + ids.length + " todos by id", null, change -> {
+            int[] counts = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                counts[i] = store.remove(change, listId, ids[i]) ? 1 : 0;
+            }
+            return counts;
+        });
+    }
+
+    @Override
+    public int deleteBy(Predicate<Todo> predicate) {
+        if (predicate instanceof TodoCriteria) {
+            return deleteBy((TodoCriteria) predicate);
+        }
+
+        return write("Deleting todos by predicate", -1, change -> store.removeIf(change, listId, predicate));
+    }
+
+    @Override
+    public int deleteBy(TodoCriteria criteria) {
+        TodoCriteria inList = criteria.andListId(listId);
+        return write("Deleting todos by " + criteria, -1, change -> store.removeIf(change, listId, inList));
+    }
+
+    @Override
+    public void deleteAll() {
+        write("Clearing repository", -1, change -> store.clear(change, listId));
+    }
+
+    @Override
+    public boolean exists(Long id) {
+        return null != findOne(id);
+    }
+
+    private static final class Transaction {
+
+        private final EmbeddedStore.Change change = new EmbeddedStore.Change();
+        private boolean failed;
+    }
+}
@@ -0,0 +1,858 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * The todos of {@link EmbeddedRepository}, in memory and on disk.
+ *
+ * In memory the todos are kept in a {@link TodoTable}, their names in a
+ * {@link StringArena} off the heap, and every list has its ids in a sorted
+ * array of primitives, newest last, with its counts, so a page of a list is
+ * a binary search away. A todo costs some 60 bytes of heap plus its name.
+ *
+ * On disk there is a {@link WriteAheadLog} of every change and a snapshot of
+ * all todos. A snapshot is written through memory mapped windows to a new
+ * file, renamed over the old one once complete, after which the segments of
+ * the log it covers are deleted. Starting up loads the snapshot and replays
+ * the log after it.
+ *
+ * Readers share {@link #lock}, writers hold it exclusively while changing
+ * the todos and appending the change to the log, and wait for the log to be
+ * synced after releasing it, so concurrent writers share the fsync. Readers
+ * may see a change before it is on disk.
+ */
+final class EmbeddedStore implements Closeable {
+
+    /**
+     * Longest name, as the column of the database.
+     */
+    static final int MAX_NAME_LENGTH = 255;
+
+    // Operations in the log
+    private static final byte PUT = 1;
+    private static final byte STATUS = 2;
+    private static final byte DELETE = 3;
+    private static final byte CLEAR = 4;
+
+    private static final String SNAPSHOT = "snapshot.dat";
+    private static final int SNAPSHOT_MAGIC = 0x54444f53;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_BYTES = 4 + 4 + 8 + 8;
+    private static final int SNAPSHOT_RECORD_BYTES = 8 + 8 + 1 + 2;
+    private static final long WINDOW_BYTES = 1L << 26;
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Path directory;
+    private final int arenaChunkBytes;
+    private final TodoTable table;
+    private final Map<Long, ListIndex> lists = new HashMap<>();
+    private StringArena arena;
+    // UTF-8 bytes of the names of all todos
+    private long nameBytes;
+
+    private WriteAheadLog log;
+    private ScheduledExecutorService snapshotter;
+
+    // Guarded by itself, one snapshot at a time
+    private final Object snapshotting = new Object();
+    // Log position the last snapshot covers, -1 while the log holds changes no snapshot does
+    private volatile long snapshotPosition;
+    private volatile long snapshots;
+
+    private EmbeddedStore(Path directory, int expectedTodos, int arenaChunkBytes) {
+        this.directory = directory;
+        this.arenaChunkBytes = arenaChunkBytes;
+        this.table = new TodoTable(expectedTodos);
+        this.arena = new StringArena(arenaChunkBytes);
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if needed, and
+     * recovers the todos from the snapshot and the log.
+     *
+     * @param expectedTodos todos to size the table for, it grows beyond
+     * @param arenaChunkBytes size of the off heap buffers names are kept in
+     * @param fsync whether writes wait for the disk, see {@link WriteAheadLog}
+     */
+    static EmbeddedStore open(Path directory, int expectedTodos, int arenaChunkBytes, boolean fsync) throws IOException {
+        Files.createDirectories(directory);
+
+        long start = System.nanoTime();
+        EmbeddedStore store = new EmbeddedStore(directory, expectedTodos, arenaChunkBytes);
+        long nextSegment = store.loadSnapshot();
+        int loaded = store.table.size();
+
+        long records = 0;
+        long last = nextSegment - 1;
+        List<Long> segments = WriteAheadLog.segments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            long segment = segments.get(i);
+            if (segment >= nextSegment) {
+                records += WriteAheadLog.replay(directory, segment, i == segments.size() - 1, store::replay);
+                last = segment;
+            }
+        }
+
+        store.log = new WriteAheadLog(directory, last + 1, fsync);
+        store.snapshotPosition = records > 0 ? -1 : 0;
+        // Left behind by a crash right after a snapshot
+        store.log.deleteBefore(nextSegment);
+
+        Log.info("Opened {}: {} todos from the snapshot, {} log records replayed, in {} ms",
+                directory, loaded, records, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return store;
+    }
+
+    /**
+     * Writes a snapshot every given number of seconds, if anything changed.
+     */
+    void startSnapshots(long seconds) {
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "embedded-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException | RuntimeException e) {
+                Log.error("Snapshot of {} failed", directory, e);
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    // Reads, under the read lock
+
+    /**
+     * @return the todo or {@code null} if there is none
+     */
+    Todo get(long list, long id) {
+        int slot = table.find(list, id);
+        return slot < 0 ? null : todoAt(slot);
+    }
+
+    boolean contains(long list, long id) {
+        return table.find(list, id) >= 0;
+    }
+
+    private Todo todoAt(int slot) {
+        return new Todo(table.id(slot), arena.get(table.name(slot)), TodoTable.toStatus(table.status(slot)),
+                table.list(slot));
+    }
+
+    /**
+     * @return the ids and counts of the list, {@code null} if it is empty
+     */
+    ListIndex index(long list) {
+        return lists.get(list);
+    }
+
+    // Changes, under the write lock, recorded for the log and to be undone
+
+    Todo put(Change change, long list, long id, Todo.Status status, String name) {
+        byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+        byte code = TodoTable.toByte(status);
+
+        undo(change, list, id);
+        set(list, id, code, arena.add(utf8));
+
+        change.redo.put(PUT).putLong(list).putLong(id).put(code).putShort(utf8.length).put(utf8);
+
+        return new Todo(id, name, status, list);
+    }
+
+    /**
+     * @return whether the todo was found
+     */
+    boolean setStatus(Change change, long list, long id, Todo.Status status) {
+        int slot = table.find(list, id);
+        if (slot < 0) {
+            return false;
+        }
+
+        byte code = TodoTable.toByte(status);
+        if (table.status(slot) != code) {
+            undo(change, list, id);
+            set(list, id, code, table.name(slot));
+
+            change.redo.put(STATUS).putLong(list).putLong(id).put(code);
+        }
+        return true;
+    }
+
+    /**
+     * @return the toggled todo or {@code null} if not found
+     */
+    Todo toggle(Change change, long list, long id) {
+        int slot = table.find(list, id);
+        if (slot < 0) {
+            return null;
+        }
+
+        Todo.Status toggled = table.status(slot) == TodoTable.COMPLETED ? Todo.Status.ACTIVE : Todo.Status.COMPLETED;
+        setStatus(change, list, id, toggled);
+        return get(list, id);
+    }
+
+    /**
+     * @return whether the todo was found
+     */
+    boolean remove(Change change, long list, long id) {
+        if (table.find(list, id) < 0) {
+            return false;
+        }
+
+        undo(change, list, id);
+        set(list, id, TodoTable.EMPTY, 0);
+
+        change.redo.put(DELETE).putLong(list).putLong(id);
+        return true;
+    }
+
+    /**
+     * Removes the todos of the list matching the predicate, in a single pass
+     * over the list.
+     *
+     * @return the number of removed todos
+     */
+    int removeIf(Change change, long list, Predicate<Todo> predicate) {
+        return removeIf(change, list, predicate, false);
+    }
+
+    /**
+     * @return the number of removed todos
+     */
+    int clear(Change change, long list) {
+        int removed = removeIf(change, list, todo -> true, true);
+        if (removed > 0) {
+            change.redo.put(CLEAR).putLong(list);
+        }
+        return removed;
+    }
+
+    private int removeIf(Change change, long list, Predicate<Todo> predicate, boolean clearing) {
+        ListIndex index = lists.get(list);
+        if (index == null) {
+            return 0;
+        }
+
+        int kept = 0;
+        for (int i = 0; i < index.size; i++) {
+            long id = index.ids[i];
+            int slot = table.find(list, id);
+            Todo todo = todoAt(slot);
+
+            if (!predicate.test(todo)) {
+                index.ids[kept++] = id;
+                continue;
+            }
+
+            if (change != null) {
+                undo(change, list, id);
+                if (!clearing) {
+                    change.redo.put(DELETE).putLong(list).putLong(id);
+                }
+            }
+            if (table.status(slot) == TodoTable.COMPLETED) {
+                index.completed--;
+            }
+            nameBytes -= arena.length(table.name(slot));
+            table.remove(slot);
+        }
+
+        int removed = index.size - kept;
+        index.size = kept;
+        if (kept == 0) {
+            lists.remove(list);
+        }
+        return removed;
+    }
+
+    /*
+     * Sets a todo, or removes it for EMPTY, keeping the index and counts of
+     * its list in step
+     */
+    private void set(long list, long id, byte status, long name) {
+        int slot = table.find(list, id);
+        byte old = slot < 0 ? TodoTable.EMPTY : table.status(slot);
+        ListIndex index = lists.get(list);
+
+        if (old != TodoTable.EMPTY) {
+            nameBytes -= arena.length(table.name(slot));
+        }
+
+        if (status == TodoTable.EMPTY) {
+            if (old != TodoTable.EMPTY) {
+                table.remove(slot);
+                index.remove(id, old);
+                if (index.size == 0) {
+                    lists.remove(list);
+                }
+            }
+            return;
+        }
+
+        nameBytes += arena.length(name);
+        if (old == TodoTable.EMPTY) {
+            table.put(list, id, status, name);
+            if (index == null) {
+                index = new ListIndex();
+                lists.put(list, index);
+            }
+            index.add(id, status);
+        } else {
+            table.setStatus(slot, status);
+            table.setName(slot, name);
+            index.changeStatus(old, status);
+        }
+    }
+
+    /**
+     * Appends the change to the log, undoing it if that fails.
+     *
+     * @return the position to {@link #sync(long)} up to, {@code -1} if
+     *         nothing changed
+     */
+    long commit(Change change) throws IOException {
+        if (change.redo.size() == 0) {
+            return -1;
+        }
+
+        try {
+            return log.append(change.redo.array(), change.redo.size());
+        } catch (IOException e) {
+            rollback(change);
+            throw e;
+        }
+    }
+
+    /**
+     * Undoes the change, newest first.
+     */
+    void rollback(Change change) {
+        for (int i = change.undoCount - 1; i >= 0; i--) {
+            set(change.undoLists[i], change.undoIds[i], change.undoStatuses[i], change.undoNames[i]);
+        }
+        change.undoCount = 0;
+    }
+
+    /**
+     * Waits until the change committed at the given position is on disk, to
+     * be called after releasing the lock.
+     */
+    void sync(long position) throws IOException {
+        if (position >= 0) {
+            log.sync(position);
+        }
+    }
+
+    private void replay(ByteBuffer record) {
+        while (record.hasRemaining()) {
+            byte operation = record.get();
+            long list = record.getLong();
+
+            switch (operation) {
+                case PUT: {
+                    long id = record.getLong();
+                    byte status = record.get();
+                    byte[] utf8 = new byte[record.getShort() & 0xFFFF];
+                    record.get(utf8);
+                    set(list, id, status, arena.add(utf8));
+                    break;
+                }
+                case STATUS: {
+                    long id = record.getLong();
+                    byte status = record.get();
+                    int slot = table.find(list, id);
+                    if (slot >= 0) {
+                        set(list, id, status, table.name(slot));
+                    }
+                    break;
+                }
+                case DELETE:
+                    set(list, record.getLong(), TodoTable.EMPTY, 0);
+                    break;
+                case CLEAR:
+                    removeIf(null, list, todo -> true, true);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown log operation " + operation);
+            }
+        }
+    }
+
+    // Snapshots
+
+    /**
+     * Writes a snapshot of all todos, if anything changed since the last
+     * one, and deletes the log it covers. Readers go on meanwhile, writers
+     * wait. Names no longer referred to are dropped from the arena after.
+     */
+    void snapshot() throws IOException {
+        synchronized (snapshotting) {
+            long nextSegment;
+
+            Lock read = lock.readLock();
+            read.lock();
+            try {
+                if (log.getAppendedBytes() == snapshotPosition) {
+                    return;
+                }
+
+                long start = System.nanoTime();
+                nextSegment = log.rotate();
+                writeSnapshot(nextSegment);
+                snapshotPosition = log.getAppendedBytes();
+                snapshots++;
+
+                Log.info("Snapshot of {} todos written in {} ms", table.size(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } finally {
+                read.unlock();
+            }
+
+            log.deleteBefore(nextSegment);
+        }
+
+        compactArena();
+    }
+
+    private void writeSnapshot(long nextSegment) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+        Files.deleteIfExists(temporary);
+
+        long size = SNAPSHOT_HEADER_BYTES + (long) table.size() * SNAPSHOT_RECORD_BYTES + nameBytes;
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedWindows out = new MappedWindows(channel, FileChannel.MapMode.READ_WRITE, size);
+
+            out.next(SNAPSHOT_HEADER_BYTES)
+                    .putInt(SNAPSHOT_MAGIC)
+                    .putInt(SNAPSHOT_VERSION)
+                    .putLong(nextSegment)
+                    .putLong(table.size());
+
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (table.isEmpty(slot)) {
+                    continue;
+                }
+
+                byte[] utf8 = arena.getBytes(table.name(slot));
+                out.next(SNAPSHOT_RECORD_BYTES)
+                        .putLong(table.list(slot))
+                        .putLong(table.id(slot))
+                        .put(table.status(slot))
+                        .putShort((short) utf8.length);
+                out.next(utf8.length).put(utf8);
+            }
+            out.finish();
+        }
+
+        Files.move(temporary, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    // Makes the rename durable, not possible on every platform
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            Log.debug("Syncing directory {} not supported: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the first log segment after the snapshot, {@code 0} if there is
+     *         no snapshot
+     */
+    private long loadSnapshot() throws IOException {
+        Path path = directory.resolve(SNAPSHOT);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        long nextSegment;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedWindows in = new MappedWindows(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+
+            ByteBuffer header = in.next(SNAPSHOT_HEADER_BYTES);
+            if (header.getInt() != SNAPSHOT_MAGIC || header.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException(path + " is not a snapshot of version " + SNAPSHOT_VERSION);
+            }
+            nextSegment = header.getLong();
+            long count = header.getLong();
+            table.reserve(count);
+
+            for (long i = 0; i < count; i++) {
+                ByteBuffer record = in.next(SNAPSHOT_RECORD_BYTES);
+                long list = record.getLong();
+                long id = record.getLong();
+                byte status = record.get();
+                byte[] utf8 = new byte[record.getShort() & 0xFFFF];
+                in.next(utf8.length).get(utf8);
+
+                long name = arena.add(utf8);
+                nameBytes += utf8.length;
+                table.put(list, id, status, name);
+                lists.computeIfAbsent(list, key -> new ListIndex()).append(id, status);
+            }
+        }
+
+        // Appended in table order, sorted once
+        for (ListIndex index : lists.values()) {
+            index.sort();
+        }
+
+        return nextSegment;
+    }
+
+    /*
+     * Copies the live names to a new arena once most of the arena is names
+     * no longer referred to, replaced or removed. Writers wait meanwhile.
+     */
+    private void compactArena() {
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            long live = nameBytes + 2L * table.size();
+            if (arena.getUsedBytes() <= 2 * live + arenaChunkBytes) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            long before = arena.getCapacityBytes();
+            StringArena compacted = new StringArena(arenaChunkBytes);
+            for (int slot = 0; slot < table.capacity(); slot++) {
+                if (!table.isEmpty(slot)) {
+                    table.setName(slot, compacted.copy(arena, table.name(slot)));
+                }
+            }
+            arena = compacted;
+
+            Log.info("Compacted names from {} to {} bytes in {} ms", before, arena.getCapacityBytes(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } finally {
+            write.unlock();
+        }
+    }
+
+    int getTodoCount() {
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            return table.size();
+        } finally {
+            read.unlock();
+        }
+    }
+
+    long getArenaBytes() {
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            return arena.getCapacityBytes();
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * @return the bytes appended to the log since the last snapshot
+     */
+    long getLogBytes() {
+        return log.getAppendedBytes() - Math.max(0, snapshotPosition);
+    }
+
+    long getSyncCount() {
+        return log.getSyncCount();
+    }
+
+    long getSnapshotCount() {
+        return snapshots;
+    }
+
+    /**
+     * Writes a last snapshot, so the next start need not replay the log.
+     */
+    @Override
+    public void close() throws IOException {
+        if (snapshotter != null) {
+            snapshotter.shutdownNow();
+        }
+        snapshot();
+        log.close();
+    }
+
+    @Override
+    public String toString() {
+        return "EmbeddedStore{" +
+                "directory=" + directory +
+                ", table=" + table +
+                ", lists=" + lists.size() +
+                ", arena=" + arena +
+                ", log=" + log +
+                '}';
+    }
+
+    /**
+     * The ids of a list, sorted, and its counts.
+     */
+    static final class ListIndex {
+
+        private long[] ids = new long[8];
+        private int size;
+        private int completed;
+
+        private void add(long id, byte status) {
+            // Ids grow over time, new ones mostly go last
+            int at = size == 0 || ids[size - 1] < id ? size : -(Arrays.binarySearch(ids, 0, size, id) + 1);
+            grow();
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+            if (status == TodoTable.COMPLETED) {
+                completed++;
+            }
+        }
+
+        private void append(long id, byte status) {
+            grow();
+            ids[size++] = id;
+            if (status == TodoTable.COMPLETED) {
+                completed++;
+            }
+        }
+
+        private void sort() {
+            Arrays.sort(ids, 0, size);
+        }
+
+        private void grow() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+        }
+
+        private void remove(long id, byte status) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+            if (status == TodoTable.COMPLETED) {
+                completed--;
+            }
+        }
+
+        private void changeStatus(byte from, byte to) {
+            if (from == TodoTable.COMPLETED) completed--;
+            if (to == TodoTable.COMPLETED) completed++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return the id at the given position, ids ascending
+         */
+        long id(int position) {
+            return ids[position];
+        }
+
+        int getActiveCount() {
+            return size - completed;
+        }
+
+        int getCompletedCount() {
+            return completed;
+        }
+
+        /**
+         * @return the position of the first id not lower than the given one
+         */
+        int lowerBound(long id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ids[mid] < id) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the position of the first id higher than the given one
+         */
+        int upperBound(long id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ids[mid] <= id) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        long[] copyIds() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+
+    /**
+     * The changes of a write or transaction: the log record redoing them and
+     * the previous state of every todo changed, to undo them.
+     */
+    static final class Change {
+
+        private final Bytes redo = new Bytes();
+
+        private long[] undoLists = new long[4];
+        private long[] undoIds = new long[4];
+        private long[] undoNames = new long[4];
+        private byte[] undoStatuses = new byte[4];
+        private int undoCount;
+
+        private void undo(long list, long id, byte status, long name) {
+            if (undoCount == undoIds.length) {
+                int capacity = undoCount * 2;
+                undoLists = Arrays.copyOf(undoLists, capacity);
+                undoIds = Arrays.copyOf(undoIds, capacity);
+                undoNames = Arrays.copyOf(undoNames, capacity);
+                undoStatuses = Arrays.copyOf(undoStatuses, capacity);
+            }
+
+            undoLists[undoCount] = list;
+            undoIds[undoCount] = id;
+            undoStatuses[undoCount] = status;
+            undoNames[undoCount] = name;
+            undoCount++;
+        }
+    }
+
+    // Records the todo as it is, before changing it
+    private void undo(Change change, long list, long id) {
+        int slot = table.find(list, id);
+        change.undo(list, id, slot < 0 ? TodoTable.EMPTY : table.status(slot), slot < 0 ? 0 : table.name(slot));
+    }
+
+    /**
+     * A growable big endian buffer, read back as the log expects it.
+     */
+    private static final class Bytes {
+
+        private byte[] bytes = new byte[64];
+        private int size;
+
+        private Bytes ensure(int more) {
+            if (size + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+            }
+            return this;
+        }
+
+        Bytes put(byte value) {
+            ensure(1).bytes[size++] = value;
+            return this;
+        }
+
+        Bytes putShort(int value) {
+            ensure(2);
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) value;
+            return this;
+        }
+
+        Bytes putLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+            return this;
+        }
+
+        Bytes put(byte[] values) {
+            ensure(values.length);
+            System.arraycopy(values, 0, bytes, size, values.length);
+            size += values.length;
+            return this;
+        }
+
+        byte[] array() {
+            return bytes;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Reads or writes a file through memory mapped windows, a mapping being
+     * limited to 2 GB.
+     */
+    private static final class MappedWindows {
+
+        private final FileChannel channel;
+        private final FileChannel.MapMode mode;
+        private final long size;
+
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        MappedWindows(FileChannel channel, FileChannel.MapMode mode, long size) {
+            this.channel = channel;
+            this.mode = mode;
+            this.size = size;
+        }
+
+        /**
+         * @return the window positioned at the next {@code bytes} bytes
+         */
+        ByteBuffer next(int bytes) throws IOException {
+            if (window == null || window.remaining() < bytes) {
+                long position = window == null ? 0 : windowStart + window.position();
+                finish();
+
+                if (position + bytes > size) {
+                    throw new EOFException("Expected " + bytes + " more bytes at " + position + " of " + size);
+                }
+                windowStart = position;
+                window = channel.map(mode, position, Math.min(WINDOW_BYTES, size - position));
+            }
+            return window;
+        }
+
+        void finish() {
+            if (window != null && mode == FileChannel.MapMode.READ_WRITE) {
+                window.force();
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Helpers for entity tags and conditional requests.
+ *
+ * @see https://tools.ietf.org/html/rfc7232
+ */
+public final class Etags {
+
+    private Etags() {
+    }
+
+    /**
+     * Checks whether an {@code If-None-Match} header matches the given entity
+     * tag, using weak comparison.
+     *
+     * @param ifNoneMatch header value, may be {@code null}
+     * @param etag to check for, in quotes
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,69 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.function.Consumer;
+
+/**
+ * Watches a directory on a daemon thread and reports files that were created,
+ * modified or deleted in it. Meant for development, e.g. to pick up edited templates
+ * without restarting the server.
+ *
+ * @see https://docs.oracle.com/javase/tutorial/essential/io/notification.html
+ */
+public class FileWatcher implements Closeable {
+
+    private final WatchService watchService;
+    private final Thread thread;
+
+    public FileWatcher(Path directory, Consumer<Path> onChange) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+
+        this.thread = new Thread(() -> watch(directory, onChange), "file-watcher-" + directory.getFileName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void watch(Path directory, Consumer<Path> onChange) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        continue;
+                    }
+
+                    Path changed = directory.resolve((Path) event.context());
+                    try {
+                        onChange.accept(changed);
+                    } catch (RuntimeException e) {
+                        Log.error("Handling change of {} failed: {}", changed, e.getMessage());
+                    }
+                }
+
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed, stop watching
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        thread.interrupt();
+    }
+}
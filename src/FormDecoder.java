@@ -0,0 +1,101 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes {@code application/x-www-form-urlencoded} data, as sent in query
+ * strings and form bodies, in a single pass over the raw bytes.
+ *
+ * Names and values are decoded as UTF-8 straight from the input. Components
+ * without escapes become a {@link String} without any intermediate copy,
+ * escaped ones are decoded into one scratch array shared by the whole call.
+ * Malformed escapes are kept literally instead of failing the request.
+ *
+ * @see https://url.spec.whatwg.org/#application/x-www-form-urlencoded
+ */
+public final class FormDecoder {
+
+    private FormDecoder() {
+    }
+
+    /**
+     * Decodes a raw, still percent encoded, query string.
+     */
+    public static void decodeQuery(String rawQuery, Parameters into) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return;
+        }
+
+        // A raw query is ASCII only, one byte per char
+        byte[] bytes = rawQuery.getBytes(StandardCharsets.ISO_8859_1);
+        decode(bytes, 0, bytes.length, into);
+    }
+
+    /**
+     * Decodes the given range of a form body.
+     */
+    public static void decode(byte[] bytes, int offset, int length, Parameters into) {
+        int end = offset + length;
+        byte[] scratch = null;
+
+        int start = offset;
+        while (start < end) {
+            int separator = start;
+            int equals = -1;
+            boolean escaped = false;
+
+            while (separator < end && bytes[separator] != '&') {
+                byte b = bytes[separator];
+                if (b == '=' && equals < 0) {
+                    equals = separator;
+                } else if (b == '%' || b == '+') {
+                    escaped = true;
+                }
+                separator++;
+            }
+
+            if (separator > start) {
+                int nameEnd = equals < 0 ? separator : equals;
+
+                if (escaped && scratch == null) {
+                    scratch = new byte[length];
+                }
+
+                if (nameEnd > start) {
+                    String name = component(bytes, start, nameEnd, escaped, scratch);
+                    String value = equals < 0 ? "" : component(bytes, equals + 1, separator, escaped, scratch);
+                    into.add(name, value);
+                }
+            }
+
+            start = separator + 1;
+        }
+    }
+
+    private static String component(byte[] bytes, int start, int end, boolean escaped, byte[] scratch) {
+        if (!escaped) {
+            return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            byte b = bytes[i];
+
+            if (b == '+') {
+                scratch[length++] = ' ';
+            } else if (b == '%' && i + 2 < end && hexValue(bytes[i + 1]) >= 0 && hexValue(bytes[i + 2]) >= 0) {
+                scratch[length++] = (byte) (hexValue(bytes[i + 1]) << 4 | hexValue(bytes[i + 2]));
+                i += 2;
+            } else {
+                scratch[length++] = b;
+            }
+        }
+
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') return b - '0';
+        if (b >= 'a' && b <= 'f') return b - 'a' + 10;
+        if (b >= 'A' && b <= 'F') return b - 'A' + 10;
+        return -1;
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Base class for repositories decorating another repository, forwarding every
+ * call to it. Subclasses override the operations they add behaviour to.
+ */
+public abstract class ForwardingRepository implements Repository {
+
+    protected final Repository delegate;
+
+    protected ForwardingRepository(Repository delegate) {
+        this.delegate = delegate;
+    }
+
+    public Repository getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public List<Todo> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<Todo> findAll(TodoCriteria criteria) {
+        return delegate.findAll(criteria);
+    }
+
+    @Override
+    public TodoIndex findIndex() {
+        return delegate.findIndex();
+    }
+
+    @Override
+    public TodoIndex findIndex(PageRequest page) {
+        return delegate.findIndex(page);
+    }
+
+    @Override
+    public TodoCursor openIndex() {
+        return delegate.openIndex();
+    }
+
+    @Override
+    @Deprecated
+    public List<Todo> findAllByStatus(Predicate<Map.Entry<Long, Todo>> entryPredicate) {
+        return delegate.findAllByStatus(entryPredicate);
+    }
+
+    @Override
+    public Todo findOne(Long id) {
+        return delegate.findOne(id);
+    }
+
+    @Override
+    public Todo findOneForUpdate(Long id) {
+        return delegate.findOneForUpdate(id);
+    }
+
+    @Override
+    public Todo save(Todo entity) {
+        return delegate.save(entity);
+    }
+
+    @Override
+    public int[] saveAll(Collection<Todo> entities) {
+        return delegate.saveAll(entities);
+    }
+
+    @Override
+    public Todo toggleStatus(Long id) {
+        return delegate.toggleStatus(id);
+    }
+
+    @Override
+    public int updateStatus(TodoCriteria criteria, Todo.Status status) {
+        return delegate.updateStatus(criteria, status);
+    }
+
+    @Override
+    public Object[] writeAll(List<TodoWrite> writes) {
+        return delegate.writeAll(writes);
+    }
+
+    @Override
+    public int delete(Todo entity) {
+        return delegate.delete(entity);
+    }
+
+    @Override
+    public int delete(Long id) {
+        return delegate.delete(id);
+    }
+
+    @Override
+    public int delete(Collection<Todo> entities) {
+        return delegate.delete(entities);
+    }
+
+    @Override
+    public int[] deleteAllById(long[] ids) {
+        return delegate.deleteAllById(ids);
+    }
+
+    @Override
+    public int deleteBy(Predicate<Todo> predicate) {
+        return delegate.deleteBy(predicate);
+    }
+
+    @Override
+    public int deleteBy(TodoCriteria criteria) {
+        return delegate.deleteBy(criteria);
+    }
+
+    @Override
+    public void deleteAll() {
+        delegate.deleteAll();
+    }
+
+    @Override
+    public <T> T inTransaction(Function<Repository, T> work) {
+        return delegate.inTransaction(work);
+    }
+
+    @Override
+    public boolean exists(Long id) {
+        return delegate.exists(id);
+    }
+}
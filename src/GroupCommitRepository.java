@@ -0,0 +1,211 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Saves, toggles and deletes concurrent callers make are queued and written
+ * together by a single writer thread, as one transaction with one commit
+ * per batch, see {@link Repository#writeAll(List)}. Every other operation
+ * goes straight to the wrapped repository.
+ *
+ * A batch holds what queued up while the previous one was written, topped
+ * up for at most the configured wait, up to the configured size. Callers
+ * wait for their batch to be committed, so a write is visible to whatever
+ * the caller does next, e.g. the page a redirect after a POST loads.
+ *
+ * If a batch fails its writes are retried one by one, so one failing write
+ * does not fail the others. With the queue full, writes are not queued but
+ * applied by the caller. Should the writer thread stop, the writes waiting
+ * for it fail and later writes are applied by their callers.
+ *
+ * Only writes to the default list are grouped, the repositories of other
+ * lists are those of the wrapped repository.
+ *
+ * @see https://dev.mysql.com/doc/refman/5.7/en/optimizing-innodb-logging.html
+ */
+public class GroupCommitRepository extends ForwardingRepository {
+
+    private static final double SECONDS_PER_NANO = 1.0 / TimeUnit.SECONDS.toNanos(1);
+
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatch;
+    private final long maxWaitNanos;
+
+    private final LatencyHistogram batchSizes;
+    private final LatencyHistogram queueWaits;
+    private final LongAdder bypassed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private volatile boolean stopped;
+
+    /**
+     * @param maxBatch most writes per transaction
+     * @param maxWaitMicros longest to wait for more writes once one is taken
+     *                      from the queue, {@code 0} takes only what is queued
+     * @param queueCapacity most writes waiting for the writer
+     */
+    public GroupCommitRepository(Repository delegate, int maxBatch, long maxWaitMicros, int queueCapacity) {
+        super(delegate);
+
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, got " + maxBatch);
+        }
+
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+
+        this.batchSizes = Metrics.histogram("todomvc_group_commit_batch_size", "Writes committed together", 1);
+        this.queueWaits = Metrics.histogram("todomvc_group_commit_queue_wait_seconds",
+                "Time writes waited to be taken into a batch", SECONDS_PER_NANO);
+        Metrics.gauge("todomvc_group_commit_queued_writes", "Writes waiting for the writer", queue::size);
+        Metrics.gauge("todomvc_group_commit_bypassed_total", "Writes applied by the caller as the queue was full",
+                bypassed::sum);
+        Metrics.gauge("todomvc_group_commit_retried_total", "Writes retried one by one after their batch failed",
+                retried::sum);
+
+        Thread writer = new Thread(this::writeLoop, "group-commit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public static GroupCommitRepository fromSystemProperties(Repository delegate) {
+        return new GroupCommitRepository(delegate,
+                Integer.getInteger("todomvc.groupCommit.maxBatch", 64),
+                Long.getLong("todomvc.groupCommit.maxWaitMicros", 200L),
+                Integer.getInteger("todomvc.groupCommit.queueCapacity", 1024));
+    }
+
+    @Override
+    public Todo save(Todo entity) {
+        return (Todo) write(TodoWrite.save(entity));
+    }
+
+    @Override
+    public Todo toggleStatus(Long id) {
+        return (Todo) write(TodoWrite.toggle(id));
+    }
+
+    @Override
+    public int delete(Todo entity) {
+        return delete(entity.getId());
+    }
+
+    @Override
+    public int delete(Long id) {
+        return (Integer) write(TodoWrite.delete(id));
+    }
+
+    @Override
+    public Repository forList(long listId) {
+        return listId == Todo.DEFAULT_LIST ? this : delegate.forList(listId);
+    }
+
+    private Object write(TodoWrite write) {
+        Pending pending = new Pending(write);
+        if (stopped || !queue.offer(pending) || stopped && queue.remove(pending)) {
+            // Removed again if queued as the writer stopped, after it failed what was left
+            bypassed.increment();
+            return write.applyTo(delegate);
+        }
+
+        try {
+            return pending.result.get();
+        } catch (InterruptedException e) {
+            // Still written, the caller just no longer waits for it
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for " + write, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Writing " + write + " failed", e.getCause());
+        }
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        List<TodoWrite> writes = new ArrayList<>(maxBatch);
+
+        try {
+            while (true) {
+                batch.clear();
+                writes.clear();
+
+                try {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, maxBatch - batch.size());
+
+                    long deadline = System.nanoTime() + maxWaitNanos;
+                    while (batch.size() < maxBatch) {
+                        Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        queue.drainTo(batch, maxBatch - batch.size());
+                    }
+
+                    long taken = System.nanoTime();
+                    for (Pending pending : batch) {
+                        queueWaits.record(taken - pending.queued);
+                        writes.add(pending.write);
+                    }
+                    batchSizes.record(batch.size());
+
+                    commit(batch, writes);
+                } catch (InterruptedException e) {
+                    Log.warn("Group commit writer interrupted, {} writes left unwritten", batch.size() + queue.size());
+                    return;
+                } catch (RuntimeException e) {
+                    Log.error("Group commit of {} writes failed", batch.size(), e);
+                    for (Pending pending : batch) {
+                        pending.result.completeExceptionally(e);
+                    }
+                }
+            }
+        } finally {
+            // Whatever stopped the writer, no caller is left waiting for it
+            stopped = true;
+            IllegalStateException failure = new IllegalStateException("The group commit writer stopped");
+            for (Pending pending : batch) {
+                pending.result.completeExceptionally(failure);
+            }
+            for (Pending pending = queue.poll(); pending != null; pending = queue.poll()) {
+                pending.result.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private void commit(List<Pending> batch, List<TodoWrite> writes) {
+        Object[] results = delegate.writeAll(writes);
+
+        if (results == null) {
+            retried.add(batch.size());
+            for (Pending pending : batch) {
+                pending.result.complete(pending.write.applyTo(delegate));
+            }
+            return;
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            batch.get(i).result.complete(results[i]);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private static final class Pending {
+
+        private final TodoWrite write;
+        private final long queued = System.nanoTime();
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        Pending(TodoWrite write) {
+            this.write = write;
+        }
+    }
+}
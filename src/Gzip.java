@@ -0,0 +1,65 @@
+import com.sun.net.httpserver.Headers;
+
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content negotiation and compression for {@code Content-Encoding: gzip}.
+ */
+public final class Gzip {
+
+    /**
+     * Bodies smaller than this are not worth compressing.
+     */
+    public static final int MIN_BYTES = Integer.getInteger("todomvc.gzip.minBytes", 1024);
+
+    private Gzip() {
+    }
+
+    /**
+     * Checks whether the request's {@code Accept-Encoding} header allows a
+     * gzip response, honouring an explicit {@code q=0}.
+     *
+     * @see https://tools.ietf.org/html/rfc7231#section-5.3.4
+     */
+    public static boolean isAccepted(Headers requestHeaders) {
+        String header = requestHeaders.getFirst("Accept-Encoding");
+        if (header == null) {
+            return false;
+        }
+
+        for (String coding : header.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+
+            if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+                for (int i = 1; i < parts.length; i++) {
+                    String param = parts[i].trim();
+                    if (param.startsWith("q=") && isZero(param.substring(2))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isZero(String qValue) {
+        try {
+            return Double.parseDouble(qValue) == 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Compresses the buffered body into the target buffer.
+     */
+    public static void compress(ResponseBuffer body, ResponseBuffer target) throws IOException {
+        try (GZIPOutputStream gzip = new GZIPOutputStream(target, 8192)) {
+            body.writeTo(gzip);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * Hashing of ids, for spreading them over shards and hash table slots.
+ */
+public final class Hashing {
+
+    private Hashing() {
+    }
+
+    /**
+     * Finalizer of MurmurHash3: every bit of the key affects every bit of the
+     * hash, so sequential ids spread evenly instead of piling up together.
+     *
+     * @see https://github.com/aappleby/smhasher/wiki/MurmurHash3
+     */
+    public static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb93fe53b1a85L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,109 @@
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Allocates ids in blocks reserved from a sequence table.
+ *
+ * Each round trip bumps the "hi" value of the sequence row and reserves the
+ * {@code blockSize} ids belonging to it, the "lo" part is then counted up in
+ * memory. Instances sharing the table never get overlapping blocks, as the
+ * row is locked by the update. Ids are unique but only roughly ordered.
+ *
+ * @see db/schema.sql for the {@code id_sequences} table
+ */
+public class HiLoIdGenerator implements IdGenerator {
+
+    private final DataSource dataSource;
+    private final String sequenceName;
+    private final int blockSize;
+
+    private long next;
+    private long limit;
+
+    public HiLoIdGenerator(DataSource dataSource, String sequenceName, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive, got " + blockSize);
+        }
+
+        this.dataSource = dataSource;
+        this.sequenceName = sequenceName;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public synchronized long nextId() {
+        if (next == limit) {
+            next = reserveBlocks(1);
+            limit = next + blockSize;
+        }
+        return next++;
+    }
+
+    @Override
+    public synchronized long[] nextIds(int count) {
+        long[] ids = new long[count];
+        int i = 0;
+
+        while (i < count && next < limit) {
+            ids[i++] = next++;
+        }
+
+        if (i < count) {
+            // Reserve everything still missing in one round trip
+            int blocks = (count - i + blockSize - 1) / blockSize;
+            next = reserveBlocks(blocks);
+            limit = next + (long) blocks * blockSize;
+
+            while (i < count) {
+                ids[i++] = next++;
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Reserves the given number of consecutive blocks.
+     *
+     * @return the first id of the reserved range
+     */
+    private long reserveBlocks(int blocks) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE id_sequences SET next_hi = next_hi + ? WHERE name = ?");
+                 PreparedStatement select = connection.prepareStatement(
+                         "SELECT next_hi FROM id_sequences WHERE name = ?")
+            ) {
+                update.setInt(1, blocks);
+                update.setString(2, sequenceName);
+
+                if (update.executeUpdate() == 0) {
+                    throw new SQLException("Unknown sequence " + sequenceName);
+                }
+
+                select.setString(1, sequenceName);
+                long hi;
+                try (ResultSet result = select.executeQuery()) {
+                    result.next();
+                    hi = result.getLong("next_hi");
+                }
+
+                connection.commit();
+
+                // The blocks of hi values (hi - blocks, hi], block 0 is never handed out
+                return (hi - blocks + 1) * blockSize;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Reserving ids from sequence " + sequenceName + " failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * Allocates unique ids for new entities without a database round trip per id.
+ */
+public interface IdGenerator {
+
+    /**
+     * Returns a new id, never returned before by this generator.
+     */
+    long nextId();
+
+    /**
+     * Returns the given number of new ids, e.g. for a batch insert.
+     *
+     * @param count of ids to allocate
+     */
+    default long[] nextIds(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = nextId();
+        }
+        return ids;
+    }
+}
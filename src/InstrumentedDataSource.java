@@ -0,0 +1,149 @@
+import org.apache.commons.dbcp2.BasicDataSource;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Wraps a DBCP pool and records how long callers wait to borrow a connection.
+ *
+ * Active and idle counts are read straight from the pool, the number of
+ * waiting callers and the borrow latency are tracked here.
+ */
+public class InstrumentedDataSource implements DataSource {
+
+    private final BasicDataSource pool;
+
+    private final AtomicLong waiting = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalBorrowNanos = new AtomicLong();
+    private final AtomicLong maxBorrowNanos = new AtomicLong();
+
+    public InstrumentedDataSource(BasicDataSource pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        waiting.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            Connection connection = pool.getConnection();
+            borrowed.incrementAndGet();
+            return connection;
+        } catch (SQLException e) {
+            failed.incrementAndGet();
+            throw e;
+        } finally {
+            waiting.decrementAndGet();
+            recordBorrow(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections use the configured credentials");
+    }
+
+    private void recordBorrow(long nanos) {
+        totalBorrowNanos.addAndGet(nanos);
+
+        long max = maxBorrowNanos.get();
+        while (nanos > max && !maxBorrowNanos.compareAndSet(max, nanos)) {
+            max = maxBorrowNanos.get();
+        }
+    }
+
+    public BasicDataSource getPool() {
+        return pool;
+    }
+
+    public int getNumActive() {
+        return pool.getNumActive();
+    }
+
+    public int getNumIdle() {
+        return pool.getNumIdle();
+    }
+
+    public long getNumWaiting() {
+        return waiting.get();
+    }
+
+    public long getBorrowCount() {
+        return borrowed.get();
+    }
+
+    public long getFailedBorrowCount() {
+        return failed.get();
+    }
+
+    public long getTotalBorrowNanos() {
+        return totalBorrowNanos.get();
+    }
+
+    public long getAverageBorrowNanos() {
+        long attempts = borrowed.get() + failed.get();
+        return attempts == 0 ? 0 : totalBorrowNanos.get() / attempts;
+    }
+
+    public long getMaxBorrowNanos() {
+        return maxBorrowNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentedDataSource{" +
+                "active=" + getNumActive() +
+                ", idle=" + getNumIdle() +
+                ", waiting=" + getNumWaiting() +
+                ", borrowed=" + getBorrowCount() +
+                ", failed=" + getFailedBorrowCount() +
+                ", avgBorrowNanos=" + getAverageBorrowNanos() +
+                ", maxBorrowNanos=" + getMaxBorrowNanos() +
+                '}';
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return pool.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        pool.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        pool.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return pool.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return pool.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return pool.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || pool.isWrapperFor(iface);
+    }
+}
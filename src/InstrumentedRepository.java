@@ -0,0 +1,192 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Times every operation of the wrapped repository and counts the rows it
+ * read or wrote, see {@link Metrics#recordQuery(String, long, long)}.
+ *
+ * Wrapping the database repository directly, below any cache, the timings
+ * are those of the SQL run. Failures are told from results the repository
+ * contract reserves for them, {@code -1} or {@code null}.
+ */
+public class InstrumentedRepository extends ForwardingRepository {
+
+    public InstrumentedRepository(Repository delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public long count() {
+        long start = System.nanoTime();
+        long count = delegate.count();
+        Metrics.recordQuery("count", System.nanoTime() - start, count < 0 ? -1 : 1);
+        return count;
+    }
+
+    @Override
+    public List<Todo> findAll() {
+        long start = System.nanoTime();
+        List<Todo> todos = delegate.findAll();
+        Metrics.recordQuery("findAll", System.nanoTime() - start, todos.size());
+        return todos;
+    }
+
+    @Override
+    public List<Todo> findAll(TodoCriteria criteria) {
+        long start = System.nanoTime();
+        List<Todo> todos = delegate.findAll(criteria);
+        Metrics.recordQuery("findAll", System.nanoTime() - start, todos.size());
+        return todos;
+    }
+
+    @Override
+    public TodoIndex findIndex() {
+        return findIndex(PageRequest.unbounded());
+    }
+
+    @Override
+    public TodoIndex findIndex(PageRequest page) {
+        long start = System.nanoTime();
+        TodoIndex index = delegate.findIndex(page);
+        Metrics.recordQuery("findIndex", System.nanoTime() - start, index.getTodos().size());
+        return index;
+    }
+
+    // Only opening is timed, the rows are read while the cursor is iterated
+    @Override
+    public TodoCursor openIndex() {
+        long start = System.nanoTime();
+        TodoCursor cursor = delegate.openIndex();
+        Metrics.recordQuery("openIndex", System.nanoTime() - start, 0);
+        return cursor;
+    }
+
+    @Override
+    public Todo findOne(Long id) {
+        long start = System.nanoTime();
+        Todo todo = delegate.findOne(id);
+        Metrics.recordQuery("findOne", System.nanoTime() - start, todo == null ? 0 : 1);
+        return todo;
+    }
+
+    @Override
+    public Todo findOneForUpdate(Long id) {
+        long start = System.nanoTime();
+        Todo todo = delegate.findOneForUpdate(id);
+        Metrics.recordQuery("findOneForUpdate", System.nanoTime() - start, todo == null ? 0 : 1);
+        return todo;
+    }
+
+    @Override
+    public Todo save(Todo entity) {
+        long start = System.nanoTime();
+        Todo saved = delegate.save(entity);
+        Metrics.recordQuery("save", System.nanoTime() - start, saved == null ? -1 : 1);
+        return saved;
+    }
+
+    @Override
+    public int[] saveAll(Collection<Todo> entities) {
+        long start = System.nanoTime();
+        int[] counts = delegate.saveAll(entities);
+        Metrics.recordQuery("saveAll", System.nanoTime() - start, counts == null ? -1 : counts.length);
+        return counts;
+    }
+
+    @Override
+    public Todo toggleStatus(Long id) {
+        long start = System.nanoTime();
+        Todo toggled = delegate.toggleStatus(id);
+        Metrics.recordQuery("toggleStatus", System.nanoTime() - start, toggled == null ? 0 : 1);
+        return toggled;
+    }
+
+    @Override
+    public int updateStatus(TodoCriteria criteria, Todo.Status status) {
+        long start = System.nanoTime();
+        int updated = delegate.updateStatus(criteria, status);
+        Metrics.recordQuery("updateStatus", System.nanoTime() - start, updated);
+        return updated;
+    }
+
+    @Override
+    public Object[] writeAll(List<TodoWrite> writes) {
+        long start = System.nanoTime();
+        Object[] results = delegate.writeAll(writes);
+        Metrics.recordQuery("writeAll", System.nanoTime() - start, results == null ? -1 : results.length);
+        return results;
+    }
+
+    @Override
+    public int delete(Todo entity) {
+        return delete(entity.getId());
+    }
+
+    @Override
+    public int delete(Long id) {
+        long start = System.nanoTime();
+        int deleted = delegate.delete(id);
+        Metrics.recordQuery("delete", System.nanoTime() - start, deleted);
+        return deleted;
+    }
+
+    @Override
+    public int delete(Collection<Todo> entities) {
+        long start = System.nanoTime();
+        int deleted = delegate.delete(entities);
+        Metrics.recordQuery("delete", System.nanoTime() - start, deleted);
+        return deleted;
+    }
+
+    @Override
+    public int[] deleteAllById(long[] ids) {
+        long start = System.nanoTime();
+        int[] counts = delegate.deleteAllById(ids);
+        Metrics.recordQuery("deleteAllById", System.nanoTime() - start, counts == null ? -1 : counts.length);
+        return counts;
+    }
+
+    @Override
+    public int deleteBy(Predicate<Todo> predicate) {
+        long start = System.nanoTime();
+        int deleted = delegate.deleteBy(predicate);
+        Metrics.recordQuery("deleteBy", System.nanoTime() - start, deleted);
+        return deleted;
+    }
+
+    @Override
+    public int deleteBy(TodoCriteria criteria) {
+        long start = System.nanoTime();
+        int deleted = delegate.deleteBy(criteria);
+        Metrics.recordQuery("deleteBy", System.nanoTime() - start, deleted);
+        return deleted;
+    }
+
+    @Override
+    public void deleteAll() {
+        long start = System.nanoTime();
+        delegate.deleteAll();
+        Metrics.recordQuery("deleteAll", System.nanoTime() - start, 0);
+    }
+
+    // Timed as a whole, the operations in it are timed one by one as well
+    @Override
+    public <T> T inTransaction(Function<Repository, T> work) {
+        long start = System.nanoTime();
+        T result = delegate.inTransaction(transaction -> work.apply(new InstrumentedRepository(transaction)));
+        Metrics.recordQuery("transaction", System.nanoTime() - start, result == null ? -1 : 0);
+        return result;
+    }
+
+    @Override
+    public Repository forList(long listId) {
+        return new InstrumentedRepository(delegate.forList(listId));
+    }
+
+    @Override
+    public boolean exists(Long id) {
+        return null != findOne(id);
+    }
+}
@@ -1,180 +1,564 @@
-import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
-import com.github.mustachejava.MustacheFactory;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.*;
 import java.net.InetSocketAddress;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.zip.GZIPOutputStream;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public final class JdkHttpServer implements Server {
 
+    private static final String INDEX_TEMPLATE = "template.mustache";
+
+    private static final int MAX_API_BODY_BYTES = Integer.getInteger("todomvc.api.maxBodyBytes", 1024 * 1024);
+
     private Application application;
     private final HttpServer server;
+    private final TemplateRegistry templates;
+    private final StaticAssets assets;
+    private final String assetCacheControl;
+    private final ServerExecutor executor;
+
+    // Tells apart the data versions of different runs, which all start at 0
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    // Rendered index pages by path and query, see Application#getIndexVersion
+    private final ConcurrentMap<String, RenderedPage> pages = new ConcurrentHashMap<>();
+    private final int maxCachedPages = Integer.getInteger("todomvc.pageCache.maxEntries", 64);
 
     public JdkHttpServer(Application application) throws IOException {
         this.application = application;
-
-        server = HttpServer.create(new InetSocketAddress(8000), 0);
-
-        server.createContext("/css/", new StaticContentHandler());
+        this.templates = TemplateRegistry.fromSystemProperties(INDEX_TEMPLATE);
+        this.assets = StaticAssets.fromSystemProperties();
+        this.assetCacheControl = "public, max-age=" + Integer.getInteger("todomvc.assets.maxAge", 3600);
+
+        server = HttpServer.create(new InetSocketAddress(Integer.getInteger("todomvc.port", 8000)), 0);
+
+        ExchangeAttributesFilter attributesFilter = new ExchangeAttributesFilter();
+        MetricsFilter metricsFilter = new MetricsFilter();
+        AccessLogFilter accessLogFilter = new AccessLogFilter();
+        OverloadFilter overloadFilter = new OverloadFilter();
+
+        StaticContentHandler staticContentHandler = new StaticContentHandler();
+        for (String assetPath : new String[] {"/css/", "/js/", "/img/", "/fonts/"}) {
+            HttpContext context = server.createContext(assetPath, staticContentHandler);
+            context.getFilters().add(attributesFilter);
+            context.getFilters().add(metricsFilter);
+            context.getFilters().add(accessLogFilter);
+            context.getFilters().add(overloadFilter);
+        }
 
         JdkHttpServerParamsFilter paramExtractor = new JdkHttpServerParamsFilter();
+        // Only needed with reads going to replicas, see Main
+        PrimaryPinFilter primaryPinFilter = System.getProperty("todomvc.db.replicas") == null
+                ? null
+                : new PrimaryPinFilter(Long.getLong("todomvc.db.pinMillis", 5000L));
+
+        HttpContext metricsContext = server.createContext("/metrics", new MetricsHandler());
+        metricsContext.getFilters().add(accessLogFilter);
+
+        // Everything else is routed by the application, see Application#createRoutes
+        HttpContext apiContext = server.createContext(TodoApi.PATH, new ApiHandler());
+        apiContext.getFilters().add(attributesFilter);
+        apiContext.getFilters().add(metricsFilter);
+        apiContext.getFilters().add(accessLogFilter);
+        apiContext.getFilters().add(overloadFilter);
+        if (primaryPinFilter != null) {
+            apiContext.getFilters().add(primaryPinFilter);
+        }
+        // The body is JSON, read by the handler whatever the client says it is
+        apiContext.getFilters().add(new JdkHttpServerParamsFilter(false));
+
+        HttpContext applicationContext = server.createContext("/", new ApplicationHandler());
+        applicationContext.getFilters().add(attributesFilter);
+        applicationContext.getFilters().add(metricsFilter);
+        applicationContext.getFilters().add(accessLogFilter);
+        applicationContext.getFilters().add(overloadFilter);
+        if (primaryPinFilter != null) {
+            applicationContext.getFilters().add(primaryPinFilter);
+        }
+        applicationContext.getFilters().add(paramExtractor);
+
+        executor = ServerExecutor.fromSystemProperties();
+        server.setExecutor(executor);
+
+        if (executor != null) {
+            Metrics.gauge("todomvc_executor_active_exchanges", "Exchanges being handled", executor::getActiveCount);
+            Metrics.gauge("todomvc_executor_queued_exchanges", "Exchanges waiting for a thread", executor::getQueueDepth);
+            Metrics.gauge("todomvc_executor_completed_total", "Exchanges handled", executor::getCompletedCount);
+            Metrics.gauge("todomvc_executor_shed_total", "Exchanges answered with 503", executor::getShedCount);
+            Metrics.gauge("todomvc_executor_refused_total", "Connections closed as even shedding was saturated",
+                    executor::getRefusedCount);
+            Metrics.gauge("todomvc_executor_queued_max_seconds", "Longest time an exchange waited for a thread",
+                    () -> executor.getMaxQueuedNanos() / 1e9);
+        }
+        Metrics.gauge("todomvc_log_dropped_total", "Log events dropped as the buffer was full", Log::getDroppedCount);
+    }
 
-        server.createContext("/todos", new KnownContextHandler())
-                .getFilters().add(paramExtractor);
-
-        server.createContext("/toggleStatus", new KnownContextHandler())
-                .getFilters().add(paramExtractor);
-
-        server.createContext("/deleteTodo", new KnownContextHandler())
-                .getFilters().add(paramExtractor);
+    /**
+     * @return the executor running the exchanges or {@code null} if they run
+     *         on the dispatcher thread
+     */
+    public ServerExecutor getExecutor() {
+        return executor;
+    }
 
-        server.createContext("/clearTodo", new KnownContextHandler())
-                .getFilters().add(paramExtractor);
+    private void return404(HttpExchange httpExchange) throws IOException {
+        String response = "Error 404 File not found.";
 
-        server.createContext("/", new DefaultHandler())
-                .getFilters().add(paramExtractor);
+        httpExchange.getResponseHeaders().set("Content-type", "text/plain");
+        httpExchange.sendResponseHeaders(404, response.length());
 
-        server.setExecutor(null);
+        OutputStream output = httpExchange.getResponseBody();
+        output.write(response.getBytes());
+        output.flush();
+        output.close();
     }
 
-    private class DefaultHandler implements HttpHandler {
+    private class StaticContentHandler implements HttpHandler {
 
         @Override
         public void handle(HttpExchange httpExchange) throws IOException {
-            String url = httpExchange.getRequestURI().toString();
-
-            /*
-              Redirect "/" to "/todos"
-              For other resources, serve 404
-             */
-            if (url.equals("/")) {
-                // TODO: Change url if possible
-                new KnownContextHandler().handle(httpExchange);
-            } else {
-               return404(httpExchange);
+            String method = httpExchange.getRequestMethod();
+            String path = httpExchange.getRequestURI().getPath();
+            boolean head = method.equalsIgnoreCase("HEAD");
+
+            StaticAssets.Asset asset = assets.get(path.substring(path.lastIndexOf('/') + 1));
+            if (asset == null || !(head || method.equalsIgnoreCase("GET"))) {
+                return404(httpExchange);
+                return;
+            }
+
+            boolean gzip = asset.getGzipped() != null && Gzip.isAccepted(httpExchange.getRequestHeaders());
+            byte[] body = gzip ? asset.getGzipped() : asset.getBytes();
+
+            Headers headers = httpExchange.getResponseHeaders();
+            headers.set("ETag", gzip ? asset.getGzippedEtag() : asset.getEtag());
+            headers.set("Cache-Control", assetCacheControl);
+            headers.set("Vary", "Accept-Encoding");
+
+            if (asset.matches(httpExchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                httpExchange.sendResponseHeaders(304, -1);
+                httpExchange.close();
+                return;
+            }
+
+            headers.set("Content-type", asset.getContentType());
+            if (gzip) {
+                headers.set("Content-Encoding", "gzip");
+            }
+
+            if (head) {
+                headers.set("Content-length", Integer.toString(body.length));
+                httpExchange.sendResponseHeaders(200, -1);
+                httpExchange.close();
+                return;
             }
+
+            httpExchange.sendResponseHeaders(200, body.length);
+
+            OutputStream output = httpExchange.getResponseBody();
+            output.write(body);
+            output.close();
         }
     }
 
-    private void return404(HttpExchange httpExchange) throws IOException {
-        String response = "Error 404 File not found.";
+    private void return405(HttpExchange httpExchange, Collection<?> allowedMethods) throws IOException {
+        String response = "Error 405 Method not allowed.";
 
+        httpExchange.getResponseHeaders().set("Allow", join(allowedMethods));
         httpExchange.getResponseHeaders().set("Content-type", "text/plain");
-        httpExchange.sendResponseHeaders(404, response.length());
+        httpExchange.sendResponseHeaders(405, response.length());
 
         OutputStream output = httpExchange.getResponseBody();
         output.write(response.getBytes());
-        output.flush();
         output.close();
     }
 
-    private class StaticContentHandler implements HttpHandler {
+    private static String join(Collection<?> values) {
+        StringBuilder joined = new StringBuilder();
+        for (Object value : values) {
+            if (joined.length() > 0) {
+                joined.append(", ");
+            }
+            joined.append(value);
+        }
+        return joined.toString();
+    }
+
+    private class ApplicationHandler implements HttpHandler {
 
         @Override
         public void handle(HttpExchange httpExchange) throws IOException {
+            String method = httpExchange.getRequestMethod();
+            String url = httpExchange.getRequestURI().getPath();
+
+            Parameters parameters = (Parameters) httpExchange.getAttribute("parameters");
+
+            Map<String, Object> response = null;
+            String stringResponse = "";
+
+            // Taken before the data is read, so it is never newer than the page
+            long version = application.getIndexVersion(method, url);
+            String etag = version < 0 ? null : "\"" + epoch + "-" + version + "-" + templates.getGeneration() + "\"";
+            String pageKey = url + '?' + httpExchange.getRequestURI().getRawQuery();
+
             try {
-                String method = httpExchange.getRequestMethod();
-                String url = httpExchange.getRequestURI().toString();
+                if (etag != null && Etags.matches(httpExchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                    httpExchange.setAttribute("route", application.getRoute(method, url));
+                    setRevalidated(httpExchange, etag);
+                    httpExchange.sendResponseHeaders(304, -1);
+                    httpExchange.close();
+                    return;
+                }
 
-                System.out.println(url + " requested");
+                RenderedPage cached = etag == null ? null : pages.get(pageKey);
+                if (cached != null && cached.etag.equals(etag)) {
+                    httpExchange.setAttribute("route", application.getRoute(method, url));
+                    sendPage(httpExchange, cached);
+                    return;
+                }
 
-                if (method.equalsIgnoreCase("GET") && url.endsWith(".css")) {
-                    int lastDotIdx = url.lastIndexOf(".css");
-                    int lastSlash = url.lastIndexOf("/");
-                    String fileName = url.substring(lastSlash + 1, lastDotIdx + 4);
+                response = application.handle(method, url, parameters);
+                httpExchange.setAttribute("route", response.get("route"));
 
-                    String root = "src/";
+                if (etag != null && ReplicaDataSource.isReplicaRead()) {
+                    // A replica may be behind the version, the page is neither tagged nor cached
+                    etag = null;
+                }
 
-                    Path relativePath = Paths.get(root + fileName);
-                    if (Files.isReadable(relativePath)) {
-                        httpExchange.getResponseHeaders().set("Content-type", "text/css");
-                        httpExchange.sendResponseHeaders(200, 0);
-                        OutputStream output = httpExchange.getResponseBody();
+                Integer status = (Integer) response.get("status");
+                if (status != null && status == 404) {
+                    return404(httpExchange);
+                } else if (status != null && status == 405) {
+                    return405(httpExchange, (Collection<?>) response.get("allow"));
+                } else if (method.equalsIgnoreCase("POST")) {
+                    String listPath = (String) response.get("listPath");
+                    httpExchange.getResponseHeaders().set("Location", listPath.isEmpty() ? "/" : listPath + "/todos");
+                    httpExchange.sendResponseHeaders(303, -1);
+                } else if (response.get("cursor") != null) {
+                    try (TodoCursor cursor = (TodoCursor) response.get("cursor")) {
+                        Map<String, Object> scopes = indexScopes(cursor.getActiveCount(), cursor.getCompletedCount());
+                        scopes.put("allTodos", cursor);
+                        scopes.put("todos", cursor);
+                        scopes.put("hasPages", false);
+                        scopes.put("listPath", response.get("listPath"));
+
+                        if (etag != null) {
+                            setRevalidated(httpExchange, etag);
+                        }
+                        sendStreamed(httpExchange, "text/html; charset=utf-8", templates.get(INDEX_TEMPLATE), scopes);
+                    }
+                } else {
+                    TodoIndex index = (TodoIndex) response.get("index");
+
+                    Map<String, Object> scopes = indexScopes(index, response.get("limit"));
+                    scopes.put("listPath", response.get("listPath"));
 
-                        output.write(Files.readAllBytes(relativePath));
-                        output.flush();
-                        output.close();
+                    Mustache mustache = templates.get(INDEX_TEMPLATE);
+
+                    ResponseBuffer body = ResponseBuffer.body();
+                    Writer writer = new OutputStreamWriter(body, StandardCharsets.UTF_8);
+                    mustache.execute(writer, scopes).flush();
+
+                    if (etag != null && maxCachedPages > 0) {
+                        RenderedPage page = new RenderedPage(etag, body);
+                        if (pages.size() >= maxCachedPages) {
+                            pages.clear();
+                        }
+                        pages.put(pageKey, page);
+                        sendPage(httpExchange, page);
                     } else {
-                        return404(httpExchange);
+                        if (etag != null) {
+                            setRevalidated(httpExchange, etag);
+                        }
+                        sendBuffered(httpExchange, 200, "text/html; charset=utf-8", body);
                     }
-                } else {
-                    return404(httpExchange);
                 }
-            } catch (NullPointerException e) {
-                httpExchange.getResponseHeaders().set("Content-type", "text/plain");
-                httpExchange.sendResponseHeaders(503, 0);
+            } catch (Exception e) {
+                stringResponse = "Error 500 " + e.getMessage();
+                Log.error("Handling {} {} failed", method, url, e);
+
+                byte[] body = stringResponse.getBytes(StandardCharsets.UTF_8);
+                httpExchange.getResponseHeaders().set("Content-type", "text/plain; charset=utf-8");
+                httpExchange.sendResponseHeaders(500, body.length);
+
+                OutputStream output = httpExchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * Lets clients keep the page but has them check it is current on every
+     * use, which costs them a 304 only.
+     */
+    private static void setRevalidated(HttpExchange httpExchange, String etag) {
+        // Weak, as the page is also sent gzipped
+        httpExchange.getResponseHeaders().set("ETag", "W/" + etag);
+        httpExchange.getResponseHeaders().set("Cache-Control", "no-cache");
+    }
+
+    private void sendPage(HttpExchange httpExchange, RenderedPage page) throws IOException {
+        boolean gzip = page.gzipped != null && Gzip.isAccepted(httpExchange.getRequestHeaders());
+        byte[] body = gzip ? page.gzipped : page.body;
+
+        setRevalidated(httpExchange, page.etag);
+        httpExchange.getResponseHeaders().set("Content-type", "text/html; charset=utf-8");
+        httpExchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (gzip) {
+            httpExchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        httpExchange.sendResponseHeaders(200, body.length);
+
+        OutputStream output = httpExchange.getResponseBody();
+        output.write(body);
+        output.close();
+    }
+
+    /**
+     * An index page as rendered for a version of the data, kept along with
+     * its compressed form if it is large enough to be sent compressed.
+     */
+    private static final class RenderedPage {
+
+        private final String etag;
+        private final byte[] body;
+        private final byte[] gzipped;
+
+        RenderedPage(String etag, ResponseBuffer body) throws IOException {
+            this.etag = etag;
+            this.body = body.toByteArray();
+
+            if (body.size() >= Gzip.MIN_BYTES) {
+                ResponseBuffer compressed = ResponseBuffer.compressed();
+                Gzip.compress(body, compressed);
+                this.gzipped = compressed.toByteArray();
+            } else {
+                this.gzipped = null;
             }
         }
     }
 
-    private class KnownContextHandler implements HttpHandler {
+    private class ApiHandler implements HttpHandler {
 
         @Override
         public void handle(HttpExchange httpExchange) throws IOException {
             String method = httpExchange.getRequestMethod();
-            String url = httpExchange.getRequestURI().toString();
+            String path = httpExchange.getRequestURI().getPath();
+            Parameters parameters = (Parameters) httpExchange.getAttribute("parameters");
 
-            Map<String, String> parameters = (Map<String, String>) httpExchange.getAttribute("parameters");
+            Map<String, Object> response;
+            try {
+                String body = readBody(httpExchange);
+                response = body == null
+                        ? apiError(413, "Request body too large")
+                        : application.getApi().handle(method, path, parameters, body);
+            } catch (IllegalArgumentException e) {
+                response = apiError(400, e.getMessage());
+            } catch (Exception e) {
+                Log.error("Handling {} {} failed", method, path, e);
+                response = apiError(500, "Error 500 " + e.getMessage());
+            }
 
-            Map<String, Collection<Todo>> response = null;
-            String stringResponse = "";
+            httpExchange.setAttribute("route", response.get("route"));
+            if (response.get("allow") != null) {
+                httpExchange.getResponseHeaders().set("Allow", join((Collection<?>) response.get("allow")));
+            }
 
+            TodoCursor cursor = (TodoCursor) response.get("cursor");
             try {
-                response = application.handle(method, url, parameters);
+                sendJson(httpExchange, response);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+    }
 
-                if (method.equalsIgnoreCase("POST")) {
-                    httpExchange.getResponseHeaders().set("Location", "/");
-                    httpExchange.sendResponseHeaders(303, -1);
-                } else {
-                    HashMap<String, Object> scopes = new HashMap<String, Object>();
+    private class MetricsHandler implements HttpHandler {
 
-                    Collection<Todo> allTodos = response.get("todos");
-                    Collection<Todo> completedTodos = response.get("completed");
+        @Override
+        public void handle(HttpExchange httpExchange) throws IOException {
+            if (!httpExchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                return405(httpExchange, Collections.singleton("GET"));
+                return;
+            }
 
-                    boolean areTodosEmpty = allTodos.isEmpty();
-                    int itemsLeftUndone = allTodos.size() - completedTodos.size();
-                    int itemsCompleted = completedTodos.size();
-                    boolean pluralTodos = itemsLeftUndone != 1;
+            ResponseBuffer body = ResponseBuffer.body();
+            Writer writer = new OutputStreamWriter(body, StandardCharsets.UTF_8);
+            Metrics.writeTo(writer);
+            writer.flush();
+
+            httpExchange.getResponseHeaders().set("Cache-Control", "no-store");
+            sendBuffered(httpExchange, 200, "text/plain; version=0.0.4; charset=utf-8", body);
+        }
+    }
 
-                    scopes.put("areTodosEmpty", areTodosEmpty);
-                    scopes.put("areAllCompleted", completedTodos.isEmpty());
-                    scopes.put("todosLeft", itemsLeftUndone);
-                    scopes.put("todosCompleted", itemsCompleted);
-                    scopes.put("pluralTodos", pluralTodos);
-                    scopes.put("allTodos", allTodos);
-                    scopes.put("todos", allTodos);
-                    scopes.put("completed", completedTodos);
+    private static Map<String, Object> apiError(int status, String message) {
+        Map<String, Object> response = new HashMap<String, Object>();
+        response.put("status", status);
+        response.put("body", Collections.singletonMap("error", message));
+        return response;
+    }
 
-                    MustacheFactory mf = new DefaultMustacheFactory();
+    /**
+     * @return the body as text or {@code null} if it exceeds the limit
+     */
+    private static String readBody(HttpExchange httpExchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        InputStream input = httpExchange.getRequestBody();
+
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if (body.size() > MAX_API_BODY_BYTES) {
+                httpExchange.getResponseHeaders().set("Connection", "close");
+                return null;
+            }
+        }
 
-                    Mustache mustache = mf.compile("template.mustache");
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
 
-                    httpExchange.sendResponseHeaders(200, stringResponse.getBytes().length);
+    /**
+     * Encodes the body while writing it with chunked transfer encoding, so
+     * a list read from a cursor is never held in memory as a whole.
+     */
+    private void sendJson(HttpExchange httpExchange, Map<String, Object> response) throws IOException {
+        int status = (Integer) response.get("status");
+        Headers headers = httpExchange.getResponseHeaders();
 
-                    OutputStream os = httpExchange.getResponseBody();
-                    Writer writer = new OutputStreamWriter(os);
-                    mustache.execute(writer, scopes).flush();
+        if (response.get("location") != null) {
+            headers.set("Location", (String) response.get("location"));
+        }
 
-                    os.close();
-                }
-            } catch (Exception e) {
-                stringResponse = e.getMessage();
-                e.printStackTrace();
+        if (status == 204) {
+            httpExchange.sendResponseHeaders(204, -1);
+            httpExchange.close();
+            return;
+        }
+
+        boolean gzip = Gzip.isAccepted(httpExchange.getRequestHeaders());
+
+        headers.set("Content-type", "application/json; charset=utf-8");
+        headers.set("Cache-Control", "no-store");
+        headers.set("Vary", "Accept-Encoding");
+        if (gzip) {
+            headers.set("Content-Encoding", "gzip");
+        }
+
+        httpExchange.sendResponseHeaders(status, 0);
 
-                httpExchange.sendResponseHeaders(500, stringResponse.getBytes().length);
+        OutputStream output = httpExchange.getResponseBody();
+        try {
+            if (gzip) {
+                output = new GZIPOutputStream(output, 8192);
             }
+
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 8192);
+            new JsonWriter(writer).value(response.get("body")).flush();
+            writer.close();
+        } catch (RuntimeException e) {
+            Log.warn("Streaming response failed: {}", e.getMessage());
+            httpExchange.close();
         }
     }
 
+    static Map<String, Object> indexScopes(TodoIndex index, Object pageLimit) {
+        Map<String, Object> scopes = indexScopes(index.getActiveCount(), index.getCompletedCount());
+        scopes.put("allTodos", index.getTodos());
+        scopes.put("todos", index.getTodos());
+        scopes.put("nextAfter", index.getNextAfter());
+        scopes.put("previousBefore", index.getPreviousBefore());
+        scopes.put("hasPages", index.getNextAfter() != null || index.getPreviousBefore() != null);
+        scopes.put("pageLimit", pageLimit);
+        return scopes;
+    }
+
+    private static Map<String, Object> indexScopes(long itemsLeftUndone, long itemsCompleted) {
+        HashMap<String, Object> scopes = new HashMap<String, Object>();
+
+        boolean areTodosEmpty = itemsLeftUndone + itemsCompleted == 0;
+        boolean pluralTodos = itemsLeftUndone != 1;
+
+        scopes.put("areTodosEmpty", areTodosEmpty);
+        scopes.put("areAllCompleted", itemsCompleted == 0);
+        scopes.put("allTodosCompleted", !areTodosEmpty && itemsLeftUndone == 0);
+        scopes.put("todosLeft", itemsLeftUndone);
+        scopes.put("todosCompleted", itemsCompleted);
+        scopes.put("pluralTodos", pluralTodos);
+
+        return scopes;
+    }
+
+    /**
+     * Renders straight into the response with chunked transfer encoding, so
+     * the first bytes go out before the whole page is rendered. Once the
+     * headers are sent a failure can only abort the response.
+     */
+    private void sendStreamed(HttpExchange httpExchange, String contentType, Mustache mustache, Object scopes) throws IOException {
+        boolean gzip = Gzip.isAccepted(httpExchange.getRequestHeaders());
+
+        httpExchange.getResponseHeaders().set("Content-type", contentType);
+        httpExchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (gzip) {
+            httpExchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        httpExchange.sendResponseHeaders(200, 0);
+
+        OutputStream output = httpExchange.getResponseBody();
+        try {
+            if (gzip) {
+                output = new GZIPOutputStream(output, 8192);
+            }
+
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            mustache.execute(writer, scopes);
+            writer.close();
+        } catch (RuntimeException e) {
+            Log.warn("Streaming response failed: {}", e.getMessage());
+            httpExchange.close();
+        }
+    }
+
+    /**
+     * Sends a fully rendered body with its exact length, compressed if it is
+     * large enough and the client accepts gzip.
+     */
+    private void sendBuffered(HttpExchange httpExchange, int status, String contentType, ResponseBuffer body) throws IOException {
+        ResponseBuffer payload = body;
+
+        httpExchange.getResponseHeaders().set("Content-type", contentType);
+        httpExchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+
+        if (body.size() >= Gzip.MIN_BYTES && Gzip.isAccepted(httpExchange.getRequestHeaders())) {
+            payload = ResponseBuffer.compressed();
+            Gzip.compress(body, payload);
+            httpExchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        httpExchange.sendResponseHeaders(status, payload.size());
+
+        OutputStream output = httpExchange.getResponseBody();
+        payload.writeTo(output);
+        output.close();
+    }
+
     @Override
     public Application getApplication() {
         return this.application;
@@ -184,4 +568,23 @@ public final class JdkHttpServer implements Server {
     public void run() {
         server.start();
     }
+
+    /**
+     * Stops accepting connections and waits up to the given delay for the
+     * exchanges in progress to finish.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return the port listened on, the one chosen by the system if
+     *         {@code todomvc.port} is {@code 0}
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
 }
@@ -1,93 +1,123 @@
 import com.sun.net.httpserver.Filter;
 import com.sun.net.httpserver.HttpExchange;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
-import java.net.URI;
-import java.net.URLDecoder;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+/**
+ * Parses the query string and, for POST requests, the url encoded form body
+ * into {@link Parameters}, stored as the {@code parameters} attribute.
+ * Other bodies, or any body if only the query is parsed, are left to the
+ * handler.
+ *
+ * Bodies larger than {@code todomvc.form.maxBodyBytes} are answered with 413
+ * without being read to the end.
+ */
 public class JdkHttpServerParamsFilter extends Filter {
+
+    private static final int MAX_BODY_BYTES = Integer.getInteger("todomvc.form.maxBodyBytes", 64 * 1024);
+
+    private static final byte[] TOO_LARGE = "Error 413 Request body too large.".getBytes(StandardCharsets.UTF_8);
+
+    // Bodies are read into a buffer reused by every request of the thread
+    private static final ThreadLocal<byte[]> BODY_BUFFER = new ThreadLocal<>();
+
+    private final boolean formBody;
+
+    public JdkHttpServerParamsFilter() {
+        this(true);
+    }
+
+    /**
+     * @param formBody whether form bodies are parsed too, not just the query
+     */
+    public JdkHttpServerParamsFilter(boolean formBody) {
+        this.formBody = formBody;
+    }
+
     @Override
     public String description() {
-        return "Parses the requested URI for parameters";
+        return "Parses the requested URI and form body for parameters";
     }
 
     @Override
     public void doFilter(HttpExchange exchange, Chain chain)
             throws IOException {
-        parseGetParameters(exchange);
-        parsePostParameters(exchange);
-        chain.doFilter(exchange);
-    }
+        Parameters parameters = new Parameters();
+
+        FormDecoder.decodeQuery(exchange.getRequestURI().getRawQuery(), parameters);
 
-    private void parseGetParameters(HttpExchange exchange)
-            throws UnsupportedEncodingException {
+        if (formBody && "post".equalsIgnoreCase(exchange.getRequestMethod()) && isFormBody(exchange)) {
+            if (!parseBody(exchange, parameters)) {
+                rejectTooLarge(exchange);
+                return;
+            }
+        }
 
-        Map parameters = new HashMap();
-        URI requestedUri = exchange.getRequestURI();
-        String query = requestedUri.getRawQuery();
-        parseQuery(query, parameters);
         exchange.setAttribute("parameters", parameters);
+        chain.doFilter(exchange);
     }
 
-    private void parsePostParameters(HttpExchange exchange)
-            throws IOException {
-
-        if ("post".equalsIgnoreCase(exchange.getRequestMethod())) {
-            @SuppressWarnings("unchecked")
-            Map parameters =
-                    (Map)exchange.getAttribute("parameters");
-            InputStreamReader isr =
-                    new InputStreamReader(exchange.getRequestBody(),"utf-8");
-            BufferedReader br = new BufferedReader(isr);
-            String query = br.readLine();
-            parseQuery(query, parameters);
-        }
+    private boolean isFormBody(HttpExchange exchange) {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        return contentType != null
+                && contentType.regionMatches(true, 0, "application/x-www-form-urlencoded", 0, 33);
     }
 
-    @SuppressWarnings("unchecked")
-    private void parseQuery(String query, Map parameters)
-            throws UnsupportedEncodingException {
-
-        if (query != null) {
-            String pairs[] = query.split("[&]");
-
-            for (String pair : pairs) {
-                String param[] = pair.split("[=]");
-
-                String key = null;
-                String value = null;
-                if (param.length > 0) {
-                    key = URLDecoder.decode(param[0],
-                            System.getProperty("file.encoding"));
+    /**
+     * @return {@code false} if the body exceeds the limit
+     */
+    private boolean parseBody(HttpExchange exchange, Parameters parameters) throws IOException {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength.trim()) > MAX_BODY_BYTES) {
+                    return false;
                 }
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
 
-                if (param.length > 1) {
-                    value = URLDecoder.decode(param[1],
-                            System.getProperty("file.encoding"));
-                }
+        byte[] buffer = BODY_BUFFER.get();
+        if (buffer == null) {
+            buffer = new byte[4096];
+        }
+
+        InputStream body = exchange.getRequestBody();
+        int length = 0;
+        int read;
+        while ((read = body.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
 
-                if (parameters.containsKey(key)) {
-                    Object obj = parameters.get(key);
-                    if(obj instanceof List) {
-                        List values = (List)obj;
-                        values.add(value);
-                    } else if(obj instanceof String) {
-                        List values = new ArrayList();
-                        values.add((String)obj);
-                        values.add(value);
-                        parameters.put(key, values);
-                    }
-                } else {
-                    parameters.put(key, value);
+            if (length == buffer.length) {
+                if (length > MAX_BODY_BYTES) {
+                    return false;
                 }
+                // One byte past the limit tells a body of exactly the limit from a larger one
+                buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_BODY_BYTES + 1));
             }
         }
+
+        BODY_BUFFER.set(buffer);
+        if (length > MAX_BODY_BYTES) {
+            return false;
+        }
+
+        FormDecoder.decode(buffer, 0, length, parameters);
+        return true;
+    }
+
+    private void rejectTooLarge(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-type", "text/plain");
+        exchange.getResponseHeaders().set("Connection", "close");
+        exchange.sendResponseHeaders(413, TOO_LARGE.length);
+
+        OutputStream output = exchange.getResponseBody();
+        output.write(TOO_LARGE);
+        output.close();
     }
 }
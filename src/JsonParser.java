@@ -0,0 +1,246 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses JSON request bodies into plain Java values: maps, lists, strings,
+ * {@link Long} or {@link Double} numbers, booleans and {@code null}.
+ *
+ * Bodies are small and bounded in size, so the whole text is parsed at once.
+ *
+ * @see https://tools.ietf.org/html/rfc8259
+ */
+public final class JsonParser {
+
+    private static final int MAX_DEPTH = 32;
+
+    private final String text;
+    private int position;
+    private int depth;
+
+    private JsonParser(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the text is not a single JSON value
+     */
+    public static Object parse(String text) {
+        JsonParser parser = new JsonParser(text);
+        Object value = parser.readValue();
+
+        parser.skipWhitespace();
+        if (parser.position != text.length()) {
+            throw parser.error("Unexpected trailing content");
+        }
+        return value;
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        if (position == text.length()) {
+            throw error("Unexpected end of input");
+        }
+
+        char c = text.charAt(position);
+        switch (c) {
+            case '{': return readObject();
+            case '[': return readArray();
+            case '"': return readString();
+            case 't': return readLiteral("true", Boolean.TRUE);
+            case 'f': return readLiteral("false", Boolean.FALSE);
+            case 'n': return readLiteral("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        enter();
+        position++;
+
+        Map<String, Object> object = new LinkedHashMap<>();
+        skipWhitespace();
+        if (consume('}')) {
+            depth--;
+            return object;
+        }
+
+        do {
+            skipWhitespace();
+            if (position == text.length() || text.charAt(position) != '"') {
+                throw error("Expected a member name");
+            }
+            String name = readString();
+
+            skipWhitespace();
+            if (!consume(':')) {
+                throw error("Expected ':'");
+            }
+            object.put(name, readValue());
+
+            skipWhitespace();
+        } while (consume(','));
+
+        if (!consume('}')) {
+            throw error("Expected ',' or '}'");
+        }
+        depth--;
+        return object;
+    }
+
+    private List<Object> readArray() {
+        enter();
+        position++;
+
+        List<Object> array = new ArrayList<>();
+        skipWhitespace();
+        if (consume(']')) {
+            depth--;
+            return array;
+        }
+
+        do {
+            array.add(readValue());
+            skipWhitespace();
+        } while (consume(','));
+
+        if (!consume(']')) {
+            throw error("Expected ',' or ']'");
+        }
+        depth--;
+        return array;
+    }
+
+    private String readString() {
+        position++;
+
+        StringBuilder string = null;
+        int start = position;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+
+            if (c == '"') {
+                String value = string == null
+                        ? text.substring(start, position)
+                        : string.append(text, start, position).toString();
+                position++;
+                return value;
+            }
+
+            if (c < 0x20) {
+                throw error("Unescaped control character in string");
+            }
+
+            if (c == '\\') {
+                if (string == null) {
+                    string = new StringBuilder();
+                }
+                string.append(text, start, position);
+                string.append(readEscape());
+                start = position;
+            } else {
+                position++;
+            }
+        }
+
+        throw error("Unterminated string");
+    }
+
+    private char readEscape() {
+        position++;
+        if (position == text.length()) {
+            throw error("Unterminated escape");
+        }
+
+        char c = text.charAt(position++);
+        switch (c) {
+            case '"': return '"';
+            case '\\': return '\\';
+            case '/': return '/';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                if (position + 4 > text.length()) {
+                    throw error("Truncated unicode escape");
+                }
+                try {
+                    char unicode = (char) Integer.parseInt(text.substring(position, position + 4), 16);
+                    position += 4;
+                    return unicode;
+                } catch (NumberFormatException e) {
+                    throw error("Invalid unicode escape");
+                }
+            default:
+                throw error("Invalid escape '\\" + c + "'");
+        }
+    }
+
+    private Object readNumber() {
+        int start = position;
+        boolean integral = true;
+
+        if (text.charAt(position) == '-') {
+            position++;
+        }
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+                integral = false;
+            } else if (c < '0' || c > '9') {
+                break;
+            }
+            position++;
+        }
+
+        String number = text.substring(start, position);
+        try {
+            return integral ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number " + number);
+        }
+    }
+
+    private Object readLiteral(String literal, Object value) {
+        if (!text.startsWith(literal, position)) {
+            throw error("Unexpected character '" + text.charAt(position) + "'");
+        }
+        position += literal.length();
+        return value;
+    }
+
+    private void enter() {
+        if (++depth > MAX_DEPTH) {
+            throw error("Nested too deeply");
+        }
+    }
+
+    private boolean consume(char c) {
+        if (position < text.length() && text.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position);
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Encodes values as JSON straight into a {@link Writer}, so an iterable is
+ * written element by element as it is iterated and nothing is buffered
+ * beyond what the writer buffers.
+ *
+ * Supported values are {@code null}, strings, numbers, booleans, todos,
+ * maps with string keys and iterables of supported values. Todo ids are
+ * written as strings as they exceed the integers JavaScript represents
+ * exactly.
+ *
+ * @see https://tools.ietf.org/html/rfc8259
+ */
+public final class JsonWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+
+    public JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    public JsonWriter value(Object value) throws IOException {
+        if (value == null) {
+            out.write("null");
+        } else if (value instanceof String) {
+            string((String) value);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.write(value.toString());
+        } else if (value instanceof Todo) {
+            todo((Todo) value);
+        } else if (value instanceof Map) {
+            object((Map<?, ?>) value);
+        } else if (value instanceof Iterable) {
+            array((Iterable<?>) value);
+        } else {
+            throw new IllegalArgumentException("Cannot encode " + value.getClass().getName() + " as JSON");
+        }
+        return this;
+    }
+
+    public JsonWriter todo(Todo todo) throws IOException {
+        out.write("{\"id\":\"");
+        out.write(Long.toString(todo.getId()));
+        out.write("\",\"title\":");
+        string(todo.getTodo());
+        out.write(",\"completed\":");
+        out.write(todo.getStatus() == Todo.Status.COMPLETED ? "true" : "false");
+        out.write('}');
+        return this;
+    }
+
+    private void object(Map<?, ?> map) throws IOException {
+        out.write('{');
+        boolean first = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+
+            string(String.valueOf(entry.getKey()));
+            out.write(':');
+            value(entry.getValue());
+        }
+        out.write('}');
+    }
+
+    private void array(Iterable<?> values) throws IOException {
+        out.write('[');
+        boolean first = true;
+        for (Object value : values) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+
+            value(value);
+        }
+        out.write(']');
+    }
+
+    private void string(String value) throws IOException {
+        out.write('"');
+
+        // Unescaped runs are written in one go, U+2028/9 are escaped for script embedding
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+
+            out.write(value, start, i - start);
+            start = i + 1;
+
+            switch (c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default:
+                    out.write("\\u");
+                    out.write(HEX[(c >> 12) & 0xF]);
+                    out.write(HEX[(c >> 8) & 0xF]);
+                    out.write(HEX[(c >> 4) & 0xF]);
+                    out.write(HEX[c & 0xF]);
+            }
+        }
+        out.write(value, start, value.length() - start);
+
+        out.write('"');
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
@@ -0,0 +1,324 @@
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous logging for requests and errors.
+ *
+ * Logging threads only capture the event, its format, arguments and the
+ * current thread name, and hand it to a bounded {@link RingBuffer}. A single
+ * background thread formats and writes the events, so request threads never
+ * wait for the output or for each other. Messages use {@code {}} placeholders,
+ * a trailing {@link Throwable} argument is written with its stack trace.
+ * Arguments are formatted later, so they must not change once logged.
+ *
+ * When the buffer is full events are dropped and counted, the writer reports
+ * the number dropped once it catches up. Pending events are flushed when the
+ * JVM shuts down.
+ *
+ * Configured by system properties:
+ * <ul>
+ *     <li>{@code todomvc.log.level}: {@code DEBUG}, {@code INFO} (default),
+ *     {@code WARN}, {@code ERROR} or {@code OFF}</li>
+ *     <li>{@code todomvc.log.debugSampling}: only 1 in n debug events is
+ *     logged, 1 (default) logs all</li>
+ *     <li>{@code todomvc.log.access}: whether to log every request (default
+ *     {@code true})</li>
+ *     <li>{@code todomvc.log.bufferSize}: events held before dropping (default
+ *     8192)</li>
+ *     <li>{@code todomvc.log.file}: file to append to instead of stdout</li>
+ * </ul>
+ */
+public final class Log {
+
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    private static final Level LEVEL = Level.valueOf(
+            System.getProperty("todomvc.log.level", "INFO").toUpperCase(Locale.ROOT));
+    private static final int DEBUG_SAMPLING = Math.max(1, Integer.getInteger("todomvc.log.debugSampling", 1));
+    private static final boolean ACCESS = Boolean.parseBoolean(System.getProperty("todomvc.log.access", "true"));
+
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final long FLUSH_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(250);
+
+    private static final RingBuffer<Event> BUFFER = new RingBuffer<>(Integer.getInteger("todomvc.log.bufferSize", 8192));
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final LongAdder SAMPLED_OUT = new LongAdder();
+    private static final Thread WRITER;
+    // Set by the writer before it parks, so producers know to unpark it
+    private static volatile boolean writerIdle;
+
+    static {
+        WRITER = new Thread(new Writer(openOutput()), "log-writer");
+        WRITER.setDaemon(true);
+        WRITER.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(TimeUnit.SECONDS.toMillis(2)), "log-flush"));
+    }
+
+    private Log() {
+    }
+
+    private static PrintStream openOutput() {
+        String file = System.getProperty("todomvc.log.file");
+        try {
+            OutputStream out = file == null
+                    ? new FileOutputStream(FileDescriptor.out)
+                    : new FileOutputStream(file, true);
+            // Flushed by the writer once the buffer is drained, not per line
+            return new PrintStream(new BufferedOutputStream(out, 16 * 1024), false, StandardCharsets.UTF_8.name());
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open log file " + file, e);
+        }
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(LEVEL) >= 0 && level != Level.OFF;
+    }
+
+    public static boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    /**
+     * Logs a debug event, subject to {@code todomvc.log.debugSampling}. Guard
+     * hot paths with {@link #isDebugEnabled()} to skip even the arguments.
+     */
+    public static void debug(String format, Object... args) {
+        if (!isDebugEnabled()) {
+            return;
+        }
+
+        if (DEBUG_SAMPLING > 1 && ThreadLocalRandom.current().nextInt(DEBUG_SAMPLING) != 0) {
+            SAMPLED_OUT.increment();
+            return;
+        }
+
+        enqueue(new Event(Level.DEBUG, format, args));
+    }
+
+    public static void info(String format, Object... args) {
+        log(Level.INFO, format, args);
+    }
+
+    public static void warn(String format, Object... args) {
+        log(Level.WARN, format, args);
+    }
+
+    public static void error(String format, Object... args) {
+        log(Level.ERROR, format, args);
+    }
+
+    private static void log(Level level, String format, Object[] args) {
+        if (isEnabled(level)) {
+            enqueue(new Event(level, format, args));
+        }
+    }
+
+    /**
+     * Logs a served request, as {@code key=value} pairs.
+     *
+     * @param bytes of the response body or {@code -1} if unknown
+     */
+    public static void access(String method, String path, int status, long bytes, long nanos) {
+        if (ACCESS && isEnabled(Level.INFO)) {
+            enqueue(new Event(method, path, status, bytes, nanos));
+        }
+    }
+
+    private static void enqueue(Event event) {
+        if (!BUFFER.offer(event)) {
+            DROPPED.increment();
+        } else if (writerIdle) {
+            LockSupport.unpark(WRITER);
+        }
+    }
+
+    /**
+     * @return number of events dropped because the buffer was full
+     */
+    public static long getDroppedCount() {
+        return DROPPED.sum();
+    }
+
+    /**
+     * @return number of debug events skipped by sampling
+     */
+    public static long getSampledOutCount() {
+        return SAMPLED_OUT.sum();
+    }
+
+    /**
+     * @return number of events waiting to be written
+     */
+    public static long getPendingCount() {
+        return BUFFER.getProduced() - BUFFER.getConsumed();
+    }
+
+    /**
+     * Waits until the events logged so far are written, at most the given time.
+     *
+     * @return {@code false} if the events were not written in time
+     */
+    public static boolean flush(long timeoutMillis) {
+        long target = BUFFER.getProduced();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        while (BUFFER.getConsumed() < target || Writer.flushedUpTo < target) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            LockSupport.unpark(WRITER);
+            LockSupport.parkNanos(FLUSH_POLL_NANOS);
+        }
+        return true;
+    }
+
+    private static final class Event {
+
+        private final long timeMillis = System.currentTimeMillis();
+        private final String thread = Thread.currentThread().getName();
+        private final Level level;
+        private final String format;
+        private final Object[] args;
+
+        // Access events only
+        private final String method;
+        private final String path;
+        private final int status;
+        private final long bytes;
+        private final long nanos;
+
+        Event(Level level, String format, Object[] args) {
+            this.level = level;
+            this.format = format;
+            this.args = args;
+            this.method = null;
+            this.path = null;
+            this.status = 0;
+            this.bytes = 0;
+            this.nanos = 0;
+        }
+
+        Event(String method, String path, int status, long bytes, long nanos) {
+            this.level = Level.INFO;
+            this.format = null;
+            this.args = NO_ARGS;
+            this.method = method;
+            this.path = path;
+            this.status = status;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Drains the buffer, parking whenever it is empty until a producer
+     * publishes the next event.
+     */
+    private static final class Writer implements Runnable {
+
+        // Position up to which events are written and flushed
+        private static volatile long flushedUpTo;
+
+        private final PrintStream out;
+        private final StringBuilder line = new StringBuilder(256);
+        private long reportedDrops;
+
+        Writer(PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            for (;;) {
+                Event event = BUFFER.poll();
+                if (event != null) {
+                    write(event);
+                    continue;
+                }
+
+                reportDrops();
+                out.flush();
+                flushedUpTo = BUFFER.getConsumed();
+
+                writerIdle = true;
+                // Checked after going idle, an event published before that is seen here, one after unparks
+                if (BUFFER.getProduced() == BUFFER.getConsumed()) {
+                    LockSupport.park(this);
+                }
+                writerIdle = false;
+            }
+        }
+
+        private void write(Event event) {
+            line.setLength(0);
+            line.append(Instant.ofEpochMilli(event.timeMillis)).append(' ');
+            line.append(event.level);
+            for (int i = event.level.name().length(); i < 5; i++) {
+                line.append(' ');
+            }
+            line.append(" [").append(event.thread).append("] ");
+
+            Throwable thrown = null;
+            if (event.format == null) {
+                line.append("access method=").append(event.method)
+                        .append(" path=").append(event.path)
+                        .append(" status=").append(event.status)
+                        .append(" bytes=").append(event.bytes)
+                        .append(" micros=").append(TimeUnit.NANOSECONDS.toMicros(event.nanos));
+            } else {
+                thrown = format(event.format, event.args);
+            }
+
+            out.println(line);
+            if (thrown != null) {
+                thrown.printStackTrace(out);
+            }
+        }
+
+        /**
+         * Appends the message to the line.
+         *
+         * @return the trailing throwable not consumed by a placeholder
+         */
+        private Throwable format(String format, Object[] args) {
+            int arg = 0;
+            int start = 0;
+            int placeholder;
+            while (arg < args.length && (placeholder = format.indexOf("{}", start)) >= 0) {
+                line.append(format, start, placeholder).append(args[arg++]);
+                start = placeholder + 2;
+            }
+            line.append(format, start, format.length());
+
+            if (arg < args.length && args[args.length - 1] instanceof Throwable) {
+                return (Throwable) args[args.length - 1];
+            }
+            return null;
+        }
+
+        private void reportDrops() {
+            long dropped = DROPPED.sum();
+            if (dropped != reportedDrops) {
+                line.setLength(0);
+                line.append(Instant.ofEpochMilli(System.currentTimeMillis())).append(" WARN  [log-writer] ")
+                        .append(dropped - reportedDrops).append(" log events dropped, buffer full");
+                out.println(line);
+                reportedDrops = dropped;
+            }
+        }
+    }
+}
@@ -1,27 +1,214 @@
 import org.apache.commons.dbcp2.BasicDataSource;
 
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
 public class Main {
     public static void main(String[] args) throws Exception {
-        String dbUrl = "jdbc:mysql://localhost:3306/todomvc" +
-                "?verifyServerCertificate=false" +
-                "&useSSL=false" +
-                "&useUnicode=true" +
-                "&serverTimezone=UTC";
+        String storage = System.getProperty("todomvc.storage", "mysql");
+
+        Repository repository;
+        InstrumentedDataSource instrumentedDataSource = null;
+        DataSource readDataSource = null;
+
+        if ("embedded".equals(storage)) {
+            repository = createEmbeddedRepository();
+        } else if ("mysql".equals(storage)) {
+            String dbUrl = "jdbc:mysql://localhost:3306/todomvc" +
+                    "?verifyServerCertificate=false" +
+                    "&useSSL=false" +
+                    "&useUnicode=true" +
+                    "&serverTimezone=UTC" +
+                    "&rewriteBatchedStatements=true" +
+                    "&useCursorFetch=true";
+
+            BasicDataSource dataSource = new BasicDataSource();
+
+            String dbUsername = "techjump";
+            String dbPassword = "techjump";
+
+            dataSource.setUsername(dbUsername);
+            dataSource.setPassword(dbPassword);
+
+            dataSource.setDriverClassName("com.mysql.cj.jdbc.Driver");
+            dataSource.setUrl(dbUrl);
+
+            PoolSettings poolSettings = PoolSettings.fromSystemProperties();
+            poolSettings.applyTo(dataSource);
+            Log.info("Connection pool: {}", poolSettings);
+
+            InstrumentedDataSource primary = new InstrumentedDataSource(dataSource);
+            instrumentedDataSource = primary;
 
-        BasicDataSource dataSource = new BasicDataSource();
+            Metrics.gauge("todomvc_pool_active_connections", "Connections borrowed from the pool", instrumentedDataSource::getNumActive);
+            Metrics.gauge("todomvc_pool_idle_connections", "Connections idle in the pool", instrumentedDataSource::getNumIdle);
+            Metrics.gauge("todomvc_pool_waiting_threads", "Threads waiting for a connection", instrumentedDataSource::getNumWaiting);
+            Metrics.gauge("todomvc_pool_borrows_total", "Connections borrowed", instrumentedDataSource::getBorrowCount);
+            Metrics.gauge("todomvc_pool_borrow_failures_total", "Failed attempts to borrow a connection",
+                    instrumentedDataSource::getFailedBorrowCount);
+            Metrics.gauge("todomvc_pool_borrow_max_seconds", "Longest wait to borrow a connection",
+                    () -> primary.getMaxBorrowNanos() / 1e9);
 
-        String dbUsername = "techjump";
-        String dbPassword = "techjump";
+            readDataSource = createReadDataSource(instrumentedDataSource, dbUsername, dbPassword, poolSettings);
 
-        dataSource.setUsername(dbUsername);
-        dataSource.setPassword(dbPassword);
+            int batchSize = Integer.getInteger("todomvc.jdbc.batchSize", 500);
+            repository = new RdbmsRepository(instrumentedDataSource, readDataSource, batchSize);
 
-        dataSource.setDriverClassName("com.mysql.cj.jdbc.Driver");
-        dataSource.setUrl(dbUrl);
-        dataSource.setInitialSize(5);
+            String shardUrls = System.getProperty("todomvc.db.shards");
+            if (shardUrls != null && !shardUrls.trim().isEmpty()) {
+                repository = createShardedRepository(repository, shardUrls, dbUsername, dbPassword, poolSettings, batchSize);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown storage " + storage + ", expected mysql or embedded");
+        }
 
-        Server server = new JdkHttpServer(new Application(new RdbmsRepository(dataSource)));
+        repository = new InstrumentedRepository(repository);
+
+        if (Boolean.getBoolean("todomvc.groupCommit.enabled")) {
+            // Below the cache, which then sees every write as committed
+            repository = GroupCommitRepository.fromSystemProperties(repository);
+        }
+
+        if (Boolean.getBoolean("todomvc.cache.enabled")) {
+            if (readDataSource != instrumentedDataSource) {
+                Log.warn("The cache may keep what it loaded from a replica that was behind until the next write");
+            }
+            CachingRepository cache = new CachingRepository(repository, Integer.getInteger("todomvc.cache.maxEntries", 10000));
+            Metrics.gauge("todomvc_cache_hits_total", "Reads served from the cache", cache::getHitCount);
+            Metrics.gauge("todomvc_cache_misses_total", "Reads passed on to the database", cache::getMissCount);
+            Metrics.gauge("todomvc_cache_evictions_total", "Todos evicted from the cache", cache::getEvictionCount);
+            Metrics.gauge("todomvc_cache_entries", "Todos in the cache", cache::size);
+            repository = cache;
+        }
+
+        IdGenerator idGenerator = createIdGenerator(instrumentedDataSource);
+
+        Server server = new JdkHttpServer(new Application(repository, idGenerator));
 
         server.run();
     }
+
+    /**
+     * Reads go to the replicas listed in {@code todomvc.db.replicas}, comma
+     * separated JDBC URLs, or to the primary if there are none.
+     */
+    private static DataSource createReadDataSource(DataSource primary, String username, String password,
+                                                   PoolSettings poolSettings) {
+        String urls = System.getProperty("todomvc.db.replicas");
+        if (urls == null || urls.trim().isEmpty()) {
+            return primary;
+        }
+
+        List<BasicDataSource> replicas = new ArrayList<>();
+        for (String url : urls.split(",")) {
+            replicas.add(newPool(url, username, password, poolSettings));
+        }
+
+        ReplicaDataSource readDataSource = new ReplicaDataSource(primary, replicas,
+                Long.getLong("todomvc.db.replicaEjectMillis", 30000L));
+        Log.info("Reading from {} replicas", replicas.size());
+
+        Metrics.gauge("todomvc_replica_healthy", "Replicas read from", readDataSource::getHealthyReplicaCount);
+        Metrics.gauge("todomvc_replica_reads_total", "Connections for reads taken from replicas",
+                readDataSource::getReplicaReads);
+        Metrics.gauge("todomvc_replica_primary_reads_total", "Connections for reads taken from the primary",
+                readDataSource::getPrimaryReads);
+        Metrics.gauge("todomvc_replica_ejections_total", "Times a replica was ejected", readDataSource::getEjections);
+
+        return readDataSource;
+    }
+
+    /**
+     * Lists are spread over the database above, the first shard, and the
+     * databases in {@code todomvc.db.shards}, comma separated JDBC URLs, each
+     * with a pool of its own. {@code todomvc.db.shardMap} places lists in
+     * shards explicitly, see {@link ShardedRepository#parseShardMap(String)}.
+     * Replicas are only read for the first shard.
+     */
+    private static Repository createShardedRepository(Repository first, String urls, String username, String password,
+                                                      PoolSettings poolSettings, int batchSize) throws Exception {
+        List<Repository> shards = new ArrayList<>();
+        shards.add(first);
+
+        List<InstrumentedDataSource> pools = new ArrayList<>();
+        for (String url : urls.split(",")) {
+            InstrumentedDataSource pool = new InstrumentedDataSource(newPool(url, username, password, poolSettings));
+            pools.add(pool);
+            shards.add(new RdbmsRepository(pool, batchSize));
+        }
+
+        ShardedRepository sharded = new ShardedRepository(shards,
+                ShardedRepository.parseShardMap(System.getProperty("todomvc.db.shardMap")));
+        Log.info("Lists spread over {}", sharded);
+
+        Metrics.gauge("todomvc_shards", "Databases lists are spread over", sharded::getShardCount);
+        Metrics.gauge("todomvc_shard_pool_active_connections", "Connections borrowed from the pools of shards but the first",
+                () -> pools.stream().mapToInt(InstrumentedDataSource::getNumActive).sum());
+        Metrics.gauge("todomvc_shard_pool_borrow_failures_total", "Failed attempts to borrow a connection from shards but the first",
+                () -> pools.stream().mapToLong(InstrumentedDataSource::getFailedBorrowCount).sum());
+
+        return sharded;
+    }
+
+    /**
+     * A pool of connections to another database than the primary. The driver
+     * is found by the URL, so it can be any database.
+     */
+    private static BasicDataSource newPool(String url, String username, String password, PoolSettings poolSettings) {
+        BasicDataSource pool = new BasicDataSource();
+        pool.setUsername(username);
+        pool.setPassword(password);
+        pool.setUrl(url.trim());
+        poolSettings.applyTo(pool);
+        return pool;
+    }
+
+    /**
+     * Todos kept by the process itself in {@code todomvc.embedded.dir}, see
+     * {@link EmbeddedStore}, instead of in MySQL.
+     */
+    private static Repository createEmbeddedRepository() throws Exception {
+        EmbeddedStore store = EmbeddedStore.open(
+                Paths.get(System.getProperty("todomvc.embedded.dir", "data")),
+                Integer.getInteger("todomvc.embedded.expectedTodos", 1 << 16),
+                Integer.getInteger("todomvc.embedded.arenaChunkBytes", 1 << 20),
+                Boolean.parseBoolean(System.getProperty("todomvc.embedded.fsync", "true")));
+        store.startSnapshots(Long.getLong("todomvc.embedded.snapshotSeconds", 300L));
+        Log.info("Storing todos in {}", store);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                store.close();
+            } catch (IOException e) {
+                Log.error("Closing {} failed, the log is replayed on the next start", store, e);
+            }
+        }, "embedded-close"));
+
+        Metrics.gauge("todomvc_embedded_todos", "Todos in the embedded store", store::getTodoCount);
+        Metrics.gauge("todomvc_embedded_arena_bytes", "Bytes allocated off the heap for names", store::getArenaBytes);
+        Metrics.gauge("todomvc_embedded_log_bytes", "Bytes logged since the last snapshot", store::getLogBytes);
+        Metrics.gauge("todomvc_embedded_syncs_total", "Times the log was synced", store::getSyncCount);
+        Metrics.gauge("todomvc_embedded_snapshots_total", "Snapshots written", store::getSnapshotCount);
+
+        return new EmbeddedRepository(store);
+    }
+
+    private static IdGenerator createIdGenerator(DataSource dataSource) {
+        String scheme = System.getProperty("todomvc.ids", "snowflake");
+
+        switch (scheme) {
+            case "snowflake":
+                return SnowflakeIdGenerator.DEFAULT;
+            case "hilo":
+                if (dataSource == null) {
+                    throw new IllegalArgumentException("The hilo id scheme needs a database, use snowflake");
+                }
+                return new HiLoIdGenerator(dataSource, "todos", Integer.getInteger("todomvc.ids.blockSize", 1000));
+            default:
+                throw new IllegalArgumentException("Unknown id scheme " + scheme + ", expected snowflake or hilo");
+        }
+    }
 }
@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of the application's metrics, written in the Prometheus text
+ * format by {@link #writeTo(Writer)}.
+ *
+ * Requests are timed per method and route pattern, counted per status code.
+ * Repository operations are timed per operation, counting rows and failures.
+ * Gauges read the current value of e.g. the connection pool when written.
+ * Other distributions, e.g. of batch sizes, are registered by name.
+ *
+ * Recording never locks: metrics are created once per key and looked up
+ * without locking afterwards, histograms and counters are striped.
+ *
+ * @see https://prometheus.io/docs/instrumenting/exposition_formats/
+ */
+public final class Metrics {
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+    private static final double SECONDS_PER_NANO = 1.0 / TimeUnit.SECONDS.toNanos(1);
+
+    // By route, then by method
+    private static final ConcurrentMap<String, ConcurrentMap<String, Timer>> ROUTES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Timer> QUERIES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Gauge> GAUGES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Distribution> DISTRIBUTIONS = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @param route pattern the request was routed by, not the requested path,
+     *              to keep the number of series bounded
+     */
+    public static void recordRequest(String method, String route, int status, long nanos) {
+        // get() never locks, computeIfAbsent() may even if the key is present
+        ConcurrentMap<String, Timer> methods = ROUTES.get(route);
+        if (methods == null) {
+            methods = ROUTES.computeIfAbsent(route, key -> new ConcurrentHashMap<>());
+        }
+
+        Timer timer = methods.get(method);
+        if (timer == null) {
+            timer = methods.computeIfAbsent(method,
+                    key -> new Timer("method=\"" + escape(method) + "\",route=\"" + escape(route) + "\""));
+        }
+
+        timer.histogram.record(nanos);
+        timer.countStatus(status);
+    }
+
+    /**
+     * @param rows read or written or {@code -1} if the operation failed
+     */
+    public static void recordQuery(String operation, long nanos, long rows) {
+        Timer timer = QUERIES.get(operation);
+        if (timer == null) {
+            timer = QUERIES.computeIfAbsent(operation, key -> new Timer("operation=\"" + escape(operation) + "\""));
+        }
+
+        timer.histogram.record(nanos);
+        if (rows < 0) {
+            timer.failures.increment();
+        } else {
+            timer.rows.add(rows);
+        }
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge of the same name.
+     */
+    public static void gauge(String name, String help, DoubleSupplier value) {
+        GAUGES.put(name, new Gauge(help, value));
+    }
+
+    /**
+     * Registers a histogram of other values than request and query times,
+     * written as a summary, replacing any histogram of the same name.
+     *
+     * @param scale to multiply the recorded values by when written, e.g. to
+     *              write nanoseconds as seconds
+     *
+     * @return the histogram to record the values into
+     */
+    public static LatencyHistogram histogram(String name, String help, double scale) {
+        Distribution distribution = new Distribution(help, scale);
+        DISTRIBUTIONS.put(name, distribution);
+        return distribution.histogram;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    public static void writeTo(Writer out) throws IOException {
+        Map<String, Timer> routes = new TreeMap<>();
+        for (ConcurrentMap<String, Timer> methods : ROUTES.values()) {
+            for (Timer timer : methods.values()) {
+                routes.put(timer.labels, timer);
+            }
+        }
+
+        writeSummary(out, "todomvc_http_request_duration_seconds", "Time to serve requests", routes);
+        out.write("# HELP todomvc_http_requests_total Requests served by status\n");
+        out.write("# TYPE todomvc_http_requests_total counter\n");
+        for (Map.Entry<String, Timer> route : routes.entrySet()) {
+            AtomicReferenceArray<LongAdder> statuses = route.getValue().statuses;
+            for (int status = 0; status < statuses.length(); status++) {
+                if (statuses.get(status) != null) {
+                    sample(out, "todomvc_http_requests_total", route.getKey() + ",status=\"" + status + "\"",
+                            statuses.get(status).sum());
+                }
+            }
+        }
+
+        Map<String, Timer> queries = new TreeMap<>();
+        for (Timer timer : QUERIES.values()) {
+            queries.put(timer.labels, timer);
+        }
+
+        writeSummary(out, "todomvc_repository_duration_seconds", "Time taken by repository operations", queries);
+        out.write("# HELP todomvc_repository_rows_total Rows read or written by repository operations\n");
+        out.write("# TYPE todomvc_repository_rows_total counter\n");
+        for (Map.Entry<String, Timer> query : queries.entrySet()) {
+            sample(out, "todomvc_repository_rows_total", query.getKey(), query.getValue().rows.sum());
+        }
+        out.write("# HELP todomvc_repository_failures_total Failed repository operations\n");
+        out.write("# TYPE todomvc_repository_failures_total counter\n");
+        for (Map.Entry<String, Timer> query : queries.entrySet()) {
+            sample(out, "todomvc_repository_failures_total", query.getKey(), query.getValue().failures.sum());
+        }
+
+        for (Map.Entry<String, Distribution> distribution : new TreeMap<>(DISTRIBUTIONS).entrySet()) {
+            String name = distribution.getKey();
+            double scale = distribution.getValue().scale;
+            LatencyHistogram.Snapshot snapshot = distribution.getValue().histogram.snapshot();
+
+            out.write("# HELP " + name + " " + distribution.getValue().help + "\n");
+            out.write("# TYPE " + name + " summary\n");
+            for (double quantile : QUANTILES) {
+                sample(out, name, "quantile=\"" + quantile + "\"", snapshot.getValue(quantile) * scale);
+            }
+            sample(out, name + "_sum", null, snapshot.getSum() * scale);
+            sample(out, name + "_count", null, snapshot.getCount());
+        }
+
+        for (Map.Entry<String, Gauge> gauge : new TreeMap<>(GAUGES).entrySet()) {
+            String name = gauge.getKey();
+            out.write("# HELP " + name + " " + gauge.getValue().help + "\n");
+            out.write("# TYPE " + name + " " + (name.endsWith("_total") ? "counter" : "gauge") + "\n");
+            sample(out, name, null, gauge.getValue().value.getAsDouble());
+        }
+    }
+
+    private static void writeSummary(Writer out, String name, String help, Map<String, Timer> timers) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " summary\n");
+        for (Map.Entry<String, Timer> timer : timers.entrySet()) {
+            LatencyHistogram.Snapshot snapshot = timer.getValue().histogram.snapshot();
+            for (double quantile : QUANTILES) {
+                sample(out, name, timer.getKey() + ",quantile=\"" + quantile + "\"",
+                        snapshot.getValue(quantile) * SECONDS_PER_NANO);
+            }
+            sample(out, name + "_sum", timer.getKey(), snapshot.getSum() * SECONDS_PER_NANO);
+            sample(out, name + "_count", timer.getKey(), snapshot.getCount());
+        }
+
+        String maxName = name.replace("_seconds", "_max_seconds");
+        out.write("# HELP " + maxName + " Longest " + help.substring(0, 1).toLowerCase() + help.substring(1) + "\n");
+        out.write("# TYPE " + maxName + " gauge\n");
+        for (Map.Entry<String, Timer> timer : timers.entrySet()) {
+            sample(out, maxName, timer.getKey(), timer.getValue().histogram.getMax() * SECONDS_PER_NANO);
+        }
+    }
+
+    private static void sample(Writer out, String name, String labels, double value) throws IOException {
+        out.write(name);
+        if (labels != null) {
+            out.write('{');
+            out.write(labels);
+            out.write('}');
+        }
+        out.write(' ');
+        out.write(value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value));
+        out.write('\n');
+    }
+
+    private static final class Timer {
+
+        private final String labels;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        // Indexed by status code, counters are created on first use
+        private final AtomicReferenceArray<LongAdder> statuses = new AtomicReferenceArray<>(600);
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        Timer(String labels) {
+            this.labels = labels;
+        }
+
+        void countStatus(int status) {
+            int index = status >= 0 && status < statuses.length() ? status : 0;
+
+            LongAdder counter = statuses.get(index);
+            if (counter == null) {
+                statuses.compareAndSet(index, null, new LongAdder());
+                counter = statuses.get(index);
+            }
+            counter.increment();
+        }
+    }
+
+    private static final class Distribution {
+
+        private final String help;
+        private final double scale;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        Distribution(String help, double scale) {
+            this.help = help;
+            this.scale = scale;
+        }
+    }
+
+    private static final class Gauge {
+
+        private final String help;
+        private final DoubleSupplier value;
+
+        Gauge(String help, DoubleSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+
+/**
+ * Times every exchange and counts its status, labelled with the route
+ * pattern a handler stored in the {@code route} attribute. Exchanges no
+ * route was found for are labelled with their context path followed by
+ * {@code *}, so unknown paths do not add series. Likewise methods other
+ * than the standard ones are labelled {@code OTHER}.
+ */
+public class MetricsFilter extends Filter {
+
+    @Override
+    public String description() {
+        return "Records request metrics";
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            Object route = exchange.getAttribute("route");
+            Metrics.recordRequest(methodLabel(exchange.getRequestMethod()),
+                    route != null ? (String) route : exchange.getHttpContext().getPath() + "*",
+                    exchange.getResponseCode(), System.nanoTime() - start);
+        }
+    }
+
+    private static String methodLabel(String method) {
+        switch (method) {
+            case "GET":
+            case "HEAD":
+            case "POST":
+            case "PUT":
+            case "PATCH":
+            case "DELETE":
+            case "OPTIONS":
+            case "TRACE":
+            case "CONNECT":
+                return method;
+            default:
+                return "OTHER";
+        }
+    }
+}
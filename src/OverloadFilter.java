@@ -0,0 +1,38 @@
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Answers exchanges the {@link ServerExecutor} shed with a 503, before the
+ * request is parsed or handled. Only filters that merely observe the
+ * exchange, such as the {@link ExchangeAttributesFilter}, come before it.
+ */
+public class OverloadFilter extends Filter {
+
+    private static final byte[] BODY = "Error 503 Server busy, try again.".getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public String description() {
+        return "Rejects requests while the server is saturated";
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (!ServerExecutor.isShedding()) {
+            chain.doFilter(exchange);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-type", "text/plain");
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.getResponseHeaders().set("Connection", "close");
+        exchange.sendResponseHeaders(503, BODY.length);
+
+        OutputStream output = exchange.getResponseBody();
+        output.write(BODY);
+        output.close();
+    }
+}
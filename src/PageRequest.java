@@ -0,0 +1,91 @@
+/**
+ * Which slice of the todos, ordered newest first, to read.
+ *
+ * Pages are addressed by a cursor, the id of a todo on a neighbouring page,
+ * instead of an offset. Reading a page thus seeks straight to the cursor
+ * through the primary key however deep into the list it is.
+ *
+ * @see https://use-the-index-luke.com/no-offset
+ */
+public final class PageRequest {
+
+    private static final PageRequest UNBOUNDED = new PageRequest(null, null, 0);
+
+    private final Long after;
+    private final Long before;
+    private final int limit;
+
+    private PageRequest(Long after, Long before, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Page limit must not be negative, got " + limit);
+        }
+
+        this.after = after;
+        this.before = before;
+        this.limit = limit;
+    }
+
+    /**
+     * Returns a request for all todos at once.
+     */
+    public static PageRequest unbounded() {
+        return UNBOUNDED;
+    }
+
+    /**
+     * Returns a request for the newest todos.
+     *
+     * @param limit of todos on the page, {@code 0} for no limit
+     */
+    public static PageRequest first(int limit) {
+        return new PageRequest(null, null, limit);
+    }
+
+    /**
+     * Returns a request for the todos older than the one with the given id.
+     */
+    public static PageRequest after(long id, int limit) {
+        return new PageRequest(id, null, limit);
+    }
+
+    /**
+     * Returns a request for the todos newer than the one with the given id.
+     */
+    public static PageRequest before(long id, int limit) {
+        return new PageRequest(null, id, limit);
+    }
+
+    /**
+     * @return the id the page starts after or {@code null}
+     */
+    public Long getAfter() {
+        return after;
+    }
+
+    /**
+     * @return the id the page ends before or {@code null}
+     */
+    public Long getBefore() {
+        return before;
+    }
+
+    /**
+     * @return the maximum number of todos on the page, {@code 0} for no limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean isUnbounded() {
+        return limit == 0 && after == null && before == null;
+    }
+
+    @Override
+    public String toString() {
+        return "PageRequest{" +
+                "after=" + after +
+                ", before=" + before +
+                ", limit=" + limit +
+                '}';
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Request parameters, in the order they were sent. A name may occur several
+ * times.
+ *
+ * Requests carry only a handful of parameters, so names and values are kept
+ * in two parallel arrays and looked up by a linear scan, which beats hashing
+ * at these sizes and allocates next to nothing.
+ */
+public final class Parameters {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private String[] values = new String[INITIAL_CAPACITY];
+    private int size;
+
+    public void add(String name, String value) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+
+        names[size] = name;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Returns the first value of the given parameter.
+     *
+     * @return the value or {@code null} if the parameter was not sent
+     */
+    public String get(String name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all the values of the given parameter, in order.
+     *
+     * @return the values or an empty list if the parameter was not sent
+     */
+    public List<String> getAll(String name) {
+        List<String> all = null;
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                if (all == null) {
+                    all = new ArrayList<>(2);
+                }
+                all.add(values[i]);
+            }
+        }
+        return all == null ? Collections.<String>emptyList() : all;
+    }
+
+    public boolean contains(String name) {
+        return get(name) != null;
+    }
+
+    public Set<String> names() {
+        return new LinkedHashSet<>(Arrays.asList(names).subList(0, size));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder string = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                string.append(", ");
+            }
+            string.append(names[i]).append('=').append(values[i]);
+        }
+        return string.append('}').toString();
+    }
+}
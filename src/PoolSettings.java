@@ -0,0 +1,125 @@
+import org.apache.commons.dbcp2.BasicDataSource;
+
+/**
+ * Sizing and timeouts of the JDBC connection pool.
+ *
+ * Every value can be overridden with a {@code todomvc.pool.*} system property,
+ * e.g. {@code -Dtodomvc.pool.maxTotal=16}. The defaults are derived from the
+ * number of available cores.
+ *
+ * @see https://commons.apache.org/proper/commons-dbcp/configuration.html
+ */
+public class PoolSettings {
+
+    private final int initialSize;
+    private final int minIdle;
+    private final int maxIdle;
+    private final int maxTotal;
+    private final long maxWaitMillis;
+    private final int removeAbandonedTimeoutSeconds;
+    private final boolean logAbandoned;
+    private final boolean abandonedUsageTracking;
+
+    public PoolSettings(int initialSize, int minIdle, int maxIdle, int maxTotal, long maxWaitMillis,
+                        int removeAbandonedTimeoutSeconds, boolean logAbandoned, boolean abandonedUsageTracking) {
+        this.initialSize = initialSize;
+        this.minIdle = minIdle;
+        this.maxIdle = maxIdle;
+        this.maxTotal = maxTotal;
+        this.maxWaitMillis = maxWaitMillis;
+        this.removeAbandonedTimeoutSeconds = removeAbandonedTimeoutSeconds;
+        this.logAbandoned = logAbandoned;
+        this.abandonedUsageTracking = abandonedUsageTracking;
+    }
+
+    public static PoolSettings fromSystemProperties() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxTotal = Integer.getInteger("todomvc.pool.maxTotal", cores * 2);
+
+        return new PoolSettings(
+                Integer.getInteger("todomvc.pool.initialSize", Math.min(5, maxTotal)),
+                Integer.getInteger("todomvc.pool.minIdle", Math.min(cores, maxTotal)),
+                Integer.getInteger("todomvc.pool.maxIdle", maxTotal),
+                maxTotal,
+                Long.getLong("todomvc.pool.maxWaitMillis", 5000L),
+                Integer.getInteger("todomvc.pool.removeAbandonedTimeout", 300),
+                Boolean.parseBoolean(System.getProperty("todomvc.pool.logAbandoned", "true")),
+                Boolean.getBoolean("todomvc.pool.abandonedUsageTracking")
+        );
+    }
+
+    /**
+     * Applies the settings to the given pool. Connections held for longer than
+     * the abandoned timeout are reclaimed and, if {@code logAbandoned} is set,
+     * reported together with the stack trace of the code that borrowed them,
+     * captured once per borrow.
+     *
+     * The timeout counts from the last statement run on the connection, not
+     * from the last row read, so it must outlast the longest response
+     * streamed from a cursor, see {@link Repository#openIndex()}, or the
+     * connection is taken away from a slow client mid stream.
+     *
+     * {@code abandonedUsageTracking} also records a stack trace on every use
+     * of a connection, for finding leaks only, it is too costly otherwise.
+     */
+    public void applyTo(BasicDataSource dataSource) {
+        dataSource.setInitialSize(initialSize);
+        dataSource.setMinIdle(minIdle);
+        dataSource.setMaxIdle(maxIdle);
+        dataSource.setMaxTotal(maxTotal);
+        dataSource.setMaxWaitMillis(maxWaitMillis);
+
+        dataSource.setRemoveAbandonedOnBorrow(true);
+        dataSource.setRemoveAbandonedOnMaintenance(true);
+        dataSource.setTimeBetweenEvictionRunsMillis(removeAbandonedTimeoutSeconds * 1000L / 2);
+        dataSource.setRemoveAbandonedTimeout(removeAbandonedTimeoutSeconds);
+        dataSource.setLogAbandoned(logAbandoned);
+        dataSource.setAbandonedUsageTracking(abandonedUsageTracking);
+    }
+
+    public int getInitialSize() {
+        return initialSize;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public int getRemoveAbandonedTimeoutSeconds() {
+        return removeAbandonedTimeoutSeconds;
+    }
+
+    public boolean isLogAbandoned() {
+        return logAbandoned;
+    }
+
+    public boolean isAbandonedUsageTracking() {
+        return abandonedUsageTracking;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolSettings{" +
+                "initialSize=" + initialSize +
+                ", minIdle=" + minIdle +
+                ", maxIdle=" + maxIdle +
+                ", maxTotal=" + maxTotal +
+                ", maxWaitMillis=" + maxWaitMillis +
+                ", removeAbandonedTimeoutSeconds=" + removeAbandonedTimeoutSeconds +
+                ", logAbandoned=" + logAbandoned +
+                ", abandonedUsageTracking=" + abandonedUsageTracking +
+                '}';
+    }
+}
@@ -0,0 +1,78 @@
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Gives clients that just wrote read-your-writes while reads go to
+ * replicas, see {@link ReplicaDataSource}.
+ *
+ * Every request but a GET or HEAD sets a cookie holding the time until
+ * which the client's reads go to the primary, long enough for the replicas
+ * to catch up with the write. The GET the client is redirected to after a
+ * POST thus reads from the primary. The cookie is only a hint: a client
+ * dropping or forging it reads from replicas or the primary early or late.
+ */
+public class PrimaryPinFilter extends Filter {
+
+    static final String COOKIE = "todomvc_primary";
+
+    private final long pinMillis;
+
+    /**
+     * @param pinMillis how long after a write reads go to the primary, more
+     *                  than the replicas usually lag behind
+     */
+    public PrimaryPinFilter(long pinMillis) {
+        this.pinMillis = pinMillis;
+    }
+
+    @Override
+    public String description() {
+        return "Routes the reads of clients that recently wrote to the primary";
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        String method = exchange.getRequestMethod();
+        long now = System.currentTimeMillis();
+
+        try {
+            if (!method.equalsIgnoreCase("GET") && !method.equalsIgnoreCase("HEAD")) {
+                exchange.getResponseHeaders().add("Set-Cookie", COOKIE + "=" + (now + pinMillis)
+                        + "; Max-Age=" + Math.max(1, pinMillis / 1000) + "; Path=/; HttpOnly; SameSite=Lax");
+                ReplicaDataSource.pinToPrimary();
+            } else if (pinnedUntil(exchange.getRequestHeaders().get("Cookie")) > now) {
+                ReplicaDataSource.pinToPrimary();
+            }
+
+            chain.doFilter(exchange);
+        } finally {
+            ReplicaDataSource.endRequest();
+        }
+    }
+
+    /**
+     * @return the time in the pin cookie or {@code 0} if there is none
+     */
+    static long pinnedUntil(List<String> cookieHeaders) {
+        if (cookieHeaders == null) {
+            return 0;
+        }
+
+        for (String header : cookieHeaders) {
+            for (String cookie : header.split(";")) {
+                int equals = cookie.indexOf('=');
+                if (equals > 0 && cookie.substring(0, equals).trim().equals(COOKIE)) {
+                    try {
+                        return Long.parseLong(cookie.substring(equals + 1).trim());
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -1,6 +1,7 @@
 import javax.sql.DataSource;
 import java.sql.*;
 import java.util.*;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -8,11 +9,124 @@ public class RdbmsRepository implements Repository {
     // http://stackoverflow.com/questions/2225221/closing-database-connections-in-java
     private DataSource dataSource;
 
+    /**
+     * Where reads that need not see the latest writes go, e.g. replicas, see
+     * {@link ReplicaDataSource}. Reads made to write after them go to
+     * {@link #dataSource}.
+     */
+    private final DataSource readDataSource;
+
+    /**
+     * Number of rows sent to the database per JDBC batch.
+     */
+    private final int batchSize;
+
+    /**
+     * The transaction all operations run in or {@code null} if every
+     * operation runs on its own.
+     */
+    private final TransactionDataSource transaction;
+
+    /**
+     * The list all operations read and write, see {@link #forList(long)}.
+     */
+    private final long listId;
+
+    /**
+     * Number of rows fetched per round trip when streaming.
+     */
+    private final int fetchSize = Integer.getInteger("todomvc.jdbc.fetchSize", 500);
+
     public RdbmsRepository(DataSource dataSource) throws Exception {
+        this(dataSource, Integer.getInteger("todomvc.jdbc.batchSize", 500));
+    }
+
+    public RdbmsRepository(DataSource dataSource, int batchSize) throws Exception {
+        this(dataSource, dataSource, batchSize);
+    }
+
+    public RdbmsRepository(DataSource dataSource, DataSource readDataSource, int batchSize) throws Exception {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, got " + batchSize);
+        }
+
         this.dataSource = dataSource;
+        this.readDataSource = readDataSource;
+        this.batchSize = batchSize;
+        this.transaction = null;
+        this.listId = Todo.DEFAULT_LIST;
         deleteAll();
     }
 
+    /**
+     * The repository work in a transaction is given, its operations all use
+     * the connection of the transaction.
+     */
+    private RdbmsRepository(TransactionDataSource transaction, int batchSize, long listId) {
+        this.dataSource = transaction;
+        this.readDataSource = transaction;
+        this.batchSize = batchSize;
+        this.transaction = transaction;
+        this.listId = listId;
+    }
+
+    /**
+     * The repository of another list in the same tables, sharing the
+     * connections and any transaction of the given one.
+     */
+    private RdbmsRepository(RdbmsRepository repository, long listId) {
+        this.dataSource = repository.dataSource;
+        this.readDataSource = repository.readDataSource;
+        this.batchSize = repository.batchSize;
+        this.transaction = repository.transaction;
+        this.listId = listId;
+    }
+
+    /*
+     * Every list lives in the same table, told apart by list_id, which leads
+     * the primary key so the rows of a list are stored together.
+     */
+    @Override
+    public Repository forList(long listId) {
+        return listId == this.listId ? this : new RdbmsRepository(this, listId);
+    }
+
+    /*
+     * Work in a transaction calling inTransaction() again joins it.
+     * @see https://martinfowler.com/eaaCatalog/unitOfWork.html
+     */
+    @Override
+    public <T> T inTransaction(Function<Repository, T> work) {
+        if (transaction != null) {
+            return work.apply(this);
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                TransactionDataSource scope = new TransactionDataSource(connection);
+                T result = work.apply(new RdbmsRepository(scope, batchSize, listId));
+
+                if (scope.isFailed()) {
+                    Log.warn("Rolling back a transaction, an operation in it failed");
+                    connection.rollback();
+                    return null;
+                }
+
+                connection.commit();
+                return result;
+            } catch (RuntimeException | Error e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            Log.error("Transaction failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
     @Override
     public long count() {
         /*
@@ -21,20 +135,37 @@ public class RdbmsRepository implements Repository {
          * @see http://stackoverflow.com/a/5783082
          * @see https://accu.org/index.php/journals/236
          */
-        try (Statement statement = dataSource.getConnection().createStatement()) {
-            ResultSet result = statement.executeQuery("SELECT COUNT(*) AS total FROM todos");
-            result.next();
+        try (Connection connection = readDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT COUNT(*) AS total FROM todos WHERE list_id = ?")
+        ) {
+            statement.setLong(1, listId);
 
-            return result.getInt("total");
+            try (ResultSet result = statement.executeQuery()) {
+                result.next();
+
+                return result.getInt("total");
+            }
         } catch (SQLException e) {
-            System.out.println("count failed: " + e.getMessage());
+            Log.error("count failed: {}", e.getMessage());
             return -1L;
         }
     }
 
     @Override
     public List<Todo> findAll() {
+        return findAll(TodoCriteria.all());
+    }
+
+    @Override
+    public List<Todo> findAll(TodoCriteria criteria) {
         List<Todo> todosList = new ArrayList<>();
+        TodoCriteria inList = criteria.andListId(listId);
+
+        String sql = "SELECT id, name, status "
+                + "FROM todos"
+                + inList.toWhereClause()
+                + " ORDER BY id DESC";
 
         /*
          * Autoclosable resources
@@ -42,96 +173,321 @@ public class RdbmsRepository implements Repository {
          * @see http://stackoverflow.com/a/5783082
          * @see https://accu.org/index.php/journals/236
          */
-        try (Statement statement = dataSource.getConnection().createStatement()) {
-            ResultSet result = statement.executeQuery(
-                    "SELECT id, name, status "
-                    + "FROM todos "
-                    + "ORDER BY id DESC"
-            );
-
-            while(result.next()) {
-                Long id = result.getLong("id");
-                String name = result.getString("name");
-                Todo.Status status = Todo.Status.valueOf(result.getString("status").toUpperCase());
+        try (Connection connection = readDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)
+        ) {
+            inList.bind(statement, 1);
 
-                todosList.add(new Todo(id, name, status));
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    todosList.add(mapTodo(result));
+                }
             }
 
             return todosList;
         } catch (SQLException e) {
-            System.out.println("findAll failed: " + e.getMessage());
+            Log.error("findAll failed: {}", e.getMessage());
             return Collections.emptyList();
         }
     }
 
+    private Todo mapTodo(ResultSet result) throws SQLException {
+        Long id = result.getLong("id");
+        String name = result.getString("name");
+        Todo.Status status = Todo.Status.valueOf(result.getString("status").toUpperCase());
+
+        return new Todo(id, name, status, listId);
+    }
+
+    @Override
+    public TodoIndex findIndex() {
+        return findIndex(PageRequest.unbounded());
+    }
+
+    @Override
+    public TodoIndex findIndex(PageRequest page) {
+        List<Todo> todosList = new ArrayList<>();
+        long active = 0;
+        long completed = 0;
+
+        // One extra row tells whether there is another page
+        int fetch = page.getLimit() > 0 ? page.getLimit() + 1 : 0;
+
+        try (Connection connection = readDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(createIndexSql(page, fetch))
+        ) {
+            int index = 1;
+            statement.setLong(index++, listId);
+            statement.setLong(index++, listId);
+            if (page.getAfter() != null) statement.setLong(index++, page.getAfter());
+            if (page.getBefore() != null) statement.setLong(index++, page.getBefore());
+            if (fetch > 0) statement.setInt(index, fetch);
+
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    active = result.getLong("active");
+                    completed = result.getLong("completed");
+
+                    result.getLong("id");
+                    if (!result.wasNull()) {
+                        todosList.add(mapTodo(result));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            Log.error("findIndex failed: {}", e.getMessage());
+            return new TodoIndex(Collections.emptyList(), 0, 0);
+        }
+
+        return TodoIndex.ofFetched(todosList, page, fetch, active, completed);
+    }
+
+    /*
+     * The counts are computed once in a derived table and joined to every
+     * row, the outer join keeps a single row of counts for an empty table.
+     * Counting by status is covered by the (status, id) index, a page seeks
+     * to its cursor through the primary key.
+     * @see https://use-the-index-luke.com/sql/partial-results/fetch-next-page
+     */
+    private String createIndexSql(PageRequest page, int fetch) {
+        StringBuilder rows = new StringBuilder("SELECT id, name, status FROM todos WHERE list_id = ?");
+        if (page.getAfter() != null) rows.append(" AND id < ?");
+        if (page.getBefore() != null) rows.append(" AND id > ?");
+        rows.append(page.getBefore() != null ? " ORDER BY id ASC" : " ORDER BY id DESC");
+        if (fetch > 0) rows.append(" LIMIT ?");
+
+        return "SELECT c.active, c.completed, t.id, t.name, t.status "
+                + "FROM ("
+                + "SELECT COALESCE(SUM(CASE WHEN status = '" + Todo.Status.ACTIVE + "' THEN 1 ELSE 0 END), 0) AS active, "
+                + "COALESCE(SUM(CASE WHEN status = '" + Todo.Status.COMPLETED + "' THEN 1 ELSE 0 END), 0) AS completed "
+                + "FROM todos WHERE list_id = ?"
+                + ") c "
+                + "LEFT JOIN (" + rows + ") t ON 1 = 1 "
+                + "ORDER BY t.id DESC";
+    }
+
+    @Override
+    public TodoCursor openIndex() {
+        Connection connection = null;
+        try {
+            connection = readDataSource.getConnection();
+
+            // Read only transaction, so counts and rows come from one snapshot
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+
+            long active;
+            long completed;
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT "
+                    + "COALESCE(SUM(CASE WHEN status = '" + Todo.Status.ACTIVE + "' THEN 1 ELSE 0 END), 0) AS active, "
+                    + "COALESCE(SUM(CASE WHEN status = '" + Todo.Status.COMPLETED + "' THEN 1 ELSE 0 END), 0) AS completed "
+                    + "FROM todos WHERE list_id = ?")
+            ) {
+                statement.setLong(1, listId);
+                try (ResultSet result = statement.executeQuery()) {
+                    result.next();
+                    active = result.getLong("active");
+                    completed = result.getLong("completed");
+                }
+            }
+
+            /*
+             * Forward only and read only, with a fetch size the MySQL driver
+             * reads the rows in chunks through a server side cursor
+             * (useCursorFetch) instead of materializing the whole result.
+             * @see https://dev.mysql.com/doc/connector-j/8.0/en/connector-j-reference-implementation-notes.html
+             */
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT id, name, status FROM todos WHERE list_id = ? ORDER BY id DESC",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setLong(1, listId);
+            statement.setFetchSize(fetchSize);
+
+            return new ResultSetCursor(connection, statement, statement.executeQuery(), active, completed);
+        } catch (SQLException e) {
+            Log.error("openIndex failed: {}", e.getMessage());
+            closeQuietly(connection);
+            return TodoCursor.of(Collections.<Todo>emptyList());
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.rollback();
+            connection.setReadOnly(false);
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            Log.error("resetting connection failed: {}", e.getMessage());
+        }
+
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            Log.error("closing connection failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Maps rows to todos one at a time while iterated, keeping the connection
+     * until closed, or until the pool reclaims it as abandoned, see
+     * {@link PoolSettings#applyTo(org.apache.commons.dbcp2.BasicDataSource)}.
+     */
+    private class ResultSetCursor implements TodoCursor {
+
+        private final Connection connection;
+        private final Statement statement;
+        private final ResultSet result;
+        private final long active;
+        private final long completed;
+
+        private boolean iterated;
+        private boolean closed;
+
+        ResultSetCursor(Connection connection, Statement statement, ResultSet result, long active, long completed) {
+            this.connection = connection;
+            this.statement = statement;
+            this.result = result;
+            this.active = active;
+            this.completed = completed;
+        }
+
+        @Override
+        public long getActiveCount() {
+            return active;
+        }
+
+        @Override
+        public long getCompletedCount() {
+            return completed;
+        }
+
+        @Override
+        public Iterator<Todo> iterator() {
+            if (iterated) {
+                throw new IllegalStateException("A cursor can only be iterated once");
+            }
+            iterated = true;
+
+            return new Iterator<Todo>() {
+                private Boolean hasNext;
+
+                @Override
+                public boolean hasNext() {
+                    if (hasNext == null) {
+                        try {
+                            hasNext = !closed && result.next();
+                        } catch (SQLException e) {
+                            throw new IllegalStateException("Reading todos failed: " + e.getMessage(), e);
+                        }
+                    }
+                    return hasNext;
+                }
+
+                @Override
+                public Todo next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    hasNext = null;
+                    try {
+                        return mapTodo(result);
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("Reading todos failed: " + e.getMessage(), e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                result.close();
+                statement.close();
+            } catch (SQLException e) {
+                Log.error("closing cursor failed: {}", e.getMessage());
+            }
+
+            closeQuietly(connection);
+        }
+    }
+
     @Override
+    @Deprecated
     public List<Todo> findAllByStatus(Predicate<Map.Entry<Long, Todo>> entryPredicate) {
-        // Convert a list to a map
-//        final Map<Long, Todo> internalMap = new HashMap<>();
-//        for (final Todo todo : findAll()) {
-//            internalMap.put(todo.getId(), todo);
-//        }
-
-        // Convert a list to map using streams
-//        Map<Long, Todo> internalMap = findAll().stream().collect(Collectors.toMap(Todo::getId, Function.identity()));
-//
-//        return internalMap.entrySet()
-//                .stream()
-//                .filter(entryPredicate)
-//                .map(Map.Entry::getValue)
-//                .collect(Collectors.toList());
-
-        List<Todo> all = findAll();
-
-        final Map<Long, Todo> internalMap = all
+        return findAll()
                 .stream()
-                .collect(Collectors.toMap(i -> i.getId(), i -> i));
-
-        return internalMap
-                .entrySet().stream()
-                .filter(entryPredicate)
-                .map(Map.Entry::getValue)
+                .filter(todo -> entryPredicate.test(new AbstractMap.SimpleImmutableEntry<>(todo.getId(), todo)))
                 .collect(Collectors.toList());
     }
 
     @Override
     public Todo findOne(Long id) {
+        return findOne(id, false);
+    }
+
+    /*
+     * Locks the row until the end of the transaction, a plain read outside of one
+     * @see https://dev.mysql.com/doc/refman/5.7/en/innodb-locking-reads.html
+     */
+    @Override
+    public Todo findOneForUpdate(Long id) {
+        return findOne(id, true);
+    }
+
+    private Todo findOne(Long id, boolean forUpdate) {
         /*
          * Autoclosable resources
          * @see https://docs.oracle.com/javase/tutorial/essential/exceptions/tryResourceClose.html
          * @see http://stackoverflow.com/a/5783082
          * @see https://accu.org/index.php/journals/236
          */
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = createFindOnePreparedStatement(connection, id);
+        try (Connection connection = (forUpdate ? dataSource : readDataSource).getConnection();
+             PreparedStatement statement = createFindOnePreparedStatement(connection, id, forUpdate);
              ResultSet result = statement.executeQuery()
         ) {
             if (result.next()) {
                 String name = result.getString("name");
                 Todo.Status status = Todo.Status.valueOf(result.getString("status").toUpperCase());
 
-                return new Todo(id, name, status);
+                return new Todo(id, name, status, listId);
             } else {
                 return null;
             }
 
         } catch (SQLException e) {
-            System.out.println("findOne failed: " + e.getMessage());
+            Log.error("findOne failed: {}", e.getMessage());
             return null;
         }
     }
 
     private PreparedStatement createFindOnePreparedStatement(Connection connection, Long id) {
+        return createFindOnePreparedStatement(connection, id, false);
+    }
+
+    private PreparedStatement createFindOnePreparedStatement(Connection connection, Long id, boolean forUpdate) {
         String sql = "SELECT name, status "
                 + "FROM todos "
-                + "WHERE id = ?";
+                + "WHERE list_id = ? AND id = ?"
+                + (forUpdate ? " FOR UPDATE" : "");
 
         PreparedStatement ps = null;
         try {
             ps = connection.prepareStatement(sql);
-            ps.setLong(1, id);
+            ps.setLong(1, listId);
+            ps.setLong(2, id);
         } catch (SQLException e) {
-            System.out.println("creating findOne prepared statement failed: " + e.getMessage());
+            Log.error("creating findOne prepared statement failed: {}", e.getMessage());
         }
 
         return ps;
@@ -139,72 +495,230 @@ public class RdbmsRepository implements Repository {
 
     @Override
     public Todo save(Todo entity) {
-        if (exists(entity.getId())) {
-            return executeUpdate(entity);
-        } else {
-            return executeInsert(entity);
-        }
-    }
-
-    private Todo executeInsert(Todo entity) {
         try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = createInsertPreparedStatement(connection)
+             PreparedStatement statement = createUpsertPreparedStatement(connection)
         ) {
-            statement.setLong(1, entity.getId());
-            statement.setString(2, entity.getTodo());
-            statement.setString(3, entity.getStatus().toString());
+            statement.setLong(1, listId);
+            statement.setLong(2, entity.getId());
+            statement.setString(3, entity.getTodo());
+            statement.setString(4, entity.getStatus().toString());
 
             statement.executeUpdate();
         } catch (SQLException e) {
-            System.out.println("Inserting todo " + entity.toString() + " failed: " + e.getMessage());
+            Log.error("Saving todo {} failed: {}", entity, e.getMessage());
             return null;
         }
 
-        return entity;
+        return inList(entity);
     }
 
-    private Todo executeUpdate(Todo entity) {
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = createUpdatePreparedStatement(connection)
-        ) {
-            statement.setString(1, entity.getTodo());
-            statement.setString(2, entity.getStatus().toString());
-            statement.setLong(3, entity.getId());
+    private Todo inList(Todo todo) {
+        return todo.getListId() == listId ? todo : new Todo(todo, listId);
+    }
 
-            statement.executeUpdate();
+    /*
+     * Inserts or overwrites in a single round trip
+     * @see https://dev.mysql.com/doc/refman/5.7/en/insert-on-duplicate.html
+     */
+    private PreparedStatement createUpsertPreparedStatement(Connection connection) {
+        PreparedStatement ps = null;
+        try {
+            ps = connection.prepareStatement(createUpsertSql());
         } catch (SQLException e) {
-            System.out.println("Updating todo " + entity.toString() + " failed: " + e.getMessage());
-            return null;
+            Log.error("creating upsert prepared statement failed: {}", e.getMessage());
         }
 
-        return entity;
+        return ps;
+    }
+
+    private String createUpsertSql() {
+        return "INSERT INTO todos (list_id, id, name, status) VALUES (?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE name = VALUES(name), status = VALUES(status)";
+    }
+
+    @Override
+    public Todo toggleStatus(Long id) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement toggle = createTogglePreparedStatement(connection)) {
+                toggle.setLong(1, listId);
+                toggle.setLong(2, id);
+
+                if (toggle.executeUpdate() == 0) {
+                    connection.rollback();
+                    return null;
+                }
+
+                Todo toggled;
+                try (PreparedStatement find = createFindOnePreparedStatement(connection, id);
+                     ResultSet result = find.executeQuery()
+                ) {
+                    result.next();
+                    toggled = new Todo(id, result.getString("name"),
+                            Todo.Status.valueOf(result.getString("status").toUpperCase()), listId);
+                }
+
+                connection.commit();
+                return toggled;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            Log.error("Toggling todo {} failed: {}", id, e.getMessage());
+            return null;
+        }
     }
 
-    private PreparedStatement createInsertPreparedStatement(Connection connection) {
-        String sql = "INSERT INTO todos (id, name, status) VALUE (?, ?, ?)";
+    private PreparedStatement createTogglePreparedStatement(Connection connection) {
+        String sql = "UPDATE todos SET status = CASE status "
+                + "WHEN '" + Todo.Status.ACTIVE + "' THEN '" + Todo.Status.COMPLETED + "' "
+                + "ELSE '" + Todo.Status.ACTIVE + "' END "
+                + "WHERE list_id = ? AND id = ?";
 
         PreparedStatement ps = null;
         try {
             ps = connection.prepareStatement(sql);
         } catch (SQLException e) {
-            System.out.println("creating insert prepared statement failed: " + e.getMessage());
+            Log.error("creating toggle prepared statement failed: {}", e.getMessage());
         }
 
         return ps;
     }
 
-    private PreparedStatement createUpdatePreparedStatement(Connection connection) {
-        String sql = "UPDATE todos SET name = ?, status = ? "
-                + "WHERE id = ?" ;
+    @Override
+    public int updateStatus(TodoCriteria criteria, Todo.Status status) {
+        TodoCriteria inList = criteria.andListId(listId);
+        String sql = "UPDATE todos SET status = ?" + inList.toWhereClause();
 
-        PreparedStatement ps = null;
-        try {
-            ps = connection.prepareStatement(sql);
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)
+        ) {
+            statement.setString(1, status.toString());
+            inList.bind(statement, 2);
+            return statement.executeUpdate();
         } catch (SQLException e) {
-            System.out.println("creating update prepared statement failed: " + e.getMessage());
+            Log.error("Updating status of todos by {} failed: {}", criteria, e.getMessage());
+            return -1;
         }
+    }
 
-        return ps;
+    /*
+     * All writes share one transaction, so one commit. Consecutive writes of
+     * the same kind go to the database as one batch, in order. Toggled todos
+     * are read back in one query at the end, or earlier if a later write
+     * touches one of them again, so every toggle reads its own result.
+     */
+    @Override
+    public Object[] writeAll(List<TodoWrite> writes) {
+        Object[] results = new Object[writes.size()];
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement upsert = createUpsertPreparedStatement(connection);
+                 PreparedStatement toggle = createTogglePreparedStatement(connection);
+                 PreparedStatement delete = createDeletePreparedStatement(connection)
+            ) {
+                // Index of the toggle of each id whose result is not read yet
+                Map<Long, Integer> toggled = new HashMap<>();
+
+                int start = 0;
+                while (start < writes.size()) {
+                    if (toggled.containsKey(writes.get(start).getId())) {
+                        readToggled(connection, toggled, results);
+                    }
+
+                    TodoWrite.Kind kind = writes.get(start).getKind();
+                    PreparedStatement statement = kind == TodoWrite.Kind.SAVE ? upsert
+                            : kind == TodoWrite.Kind.TOGGLE ? toggle
+                            : delete;
+
+                    int end = start;
+                    for (; end < writes.size() && writes.get(end).getKind() == kind; end++) {
+                        TodoWrite write = writes.get(end);
+                        if (toggled.containsKey(write.getId())) {
+                            // Written again, the run ends to read the toggle first
+                            break;
+                        }
+                        if (kind == TodoWrite.Kind.TOGGLE) {
+                            toggled.put(write.getId(), end);
+                        }
+
+                        statement.setLong(1, listId);
+                        statement.setLong(2, write.getId());
+                        if (kind == TodoWrite.Kind.SAVE) {
+                            statement.setString(3, write.getTodo().getTodo());
+                            statement.setString(4, write.getTodo().getStatus().toString());
+                        }
+                        statement.addBatch();
+                    }
+
+                    int[] counts = statement.executeBatch();
+                    for (int i = start; i < end; i++) {
+                        // The driver may not report a count for rewritten batches
+                        int count = counts[i - start] == Statement.SUCCESS_NO_INFO ? 1 : counts[i - start];
+                        if (kind == TodoWrite.Kind.SAVE) {
+                            results[i] = inList(writes.get(i).getTodo());
+                        } else if (kind == TodoWrite.Kind.TOGGLE) {
+                            if (count == 0) {
+                                toggled.remove(writes.get(i).getId());
+                            }
+                        } else {
+                            results[i] = count;
+                        }
+                    }
+
+                    start = end;
+                }
+
+                if (!toggled.isEmpty()) {
+                    readToggled(connection, toggled, results);
+                }
+
+                connection.commit();
+                return results;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            Log.error("Writing {} todos in one transaction failed: {}", writes.size(), e.getMessage());
+            return null;
+        }
+    }
+
+    private void readToggled(Connection connection, Map<Long, Integer> toggled, Object[] results) throws SQLException {
+        Map<Long, Todo> found = findToggled(connection, toggled.keySet());
+        for (Map.Entry<Long, Integer> toggle : toggled.entrySet()) {
+            results[toggle.getValue()] = found.get(toggle.getKey());
+        }
+        toggled.clear();
+    }
+
+    private Map<Long, Todo> findToggled(Connection connection, Collection<Long> ids) throws SQLException {
+        long[] idArray = new long[ids.size()];
+        int i = 0;
+        for (long id : ids) {
+            idArray[i++] = id;
+        }
+        TodoCriteria criteria = TodoCriteria.withIds(idArray).andListId(listId);
+
+        Map<Long, Todo> found = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT id, name, status FROM todos" + criteria.toWhereClause())) {
+            criteria.bind(statement, 1);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    Todo todo = mapTodo(result);
+                    found.put(todo.getId(), todo);
+                }
+            }
+        }
+        return found;
     }
 
     @Override
@@ -217,22 +731,23 @@ public class RdbmsRepository implements Repository {
         try (Connection connection = dataSource.getConnection();
              PreparedStatement statement = createDeletePreparedStatement(connection)
         ) {
-            statement.setLong(1, id);
+            statement.setLong(1, listId);
+            statement.setLong(2, id);
             return statement.executeUpdate();
         } catch (SQLException e) {
-            System.out.println("Deleting todo " + id.toString() + " failed: " + e.getMessage());
+            Log.error("Deleting todo {} failed: {}", id, e.getMessage());
             return -1;
         }
     }
 
     private PreparedStatement createDeletePreparedStatement(Connection connection) {
-        String sql = "DELETE FROM todos WHERE id = ?";
+        String sql = "DELETE FROM todos WHERE list_id = ? AND id = ?";
 
         PreparedStatement ps = null;
         try {
             ps = connection.prepareStatement(sql);
         } catch (SQLException e) {
-            System.out.println("creating delete prepared statement failed: " + e.getMessage());
+            Log.error("creating delete prepared statement failed: {}", e.getMessage());
         }
 
         return ps;
@@ -240,38 +755,146 @@ public class RdbmsRepository implements Repository {
 
     @Override
     public int delete(Collection<Todo> entities) {
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement statement = createDeletePreparedStatement(connection)
-        ) {
-            int deleted = 0;
-            for (Todo todo : entities) {
-                statement.setLong(1, todo.getId());
-                deleted += statement.executeUpdate();
-            }
-            return deleted;
-        } catch (SQLException e) {
-            System.out.println("Deleting collection of todos " + entities + " failed: " + e.getMessage());
+        long[] ids = new long[entities.size()];
+        int i = 0;
+        for (Todo todo : entities) {
+            ids[i++] = todo.getId();
+        }
+
+        int[] counts = deleteAllById(ids);
+        if (counts == null) {
             return -1;
         }
+
+        int deleted = 0;
+        for (int count : counts) {
+            // The driver may not report a count for rewritten batches
+            deleted += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+        }
+        return deleted;
+    }
+
+    @Override
+    public int[] saveAll(Collection<Todo> entities) {
+        final Todo[] todos = entities.toArray(new Todo[0]);
+
+        try {
+            return executeBatch(createUpsertSql(), todos.length, (statement, row) -> {
+                statement.setLong(1, listId);
+                statement.setLong(2, todos[row].getId());
+                statement.setString(3, todos[row].getTodo());
+                statement.setString(4, todos[row].getStatus().toString());
+            });
+        } catch (SQLException e) {
+            Log.error("Saving collection of {} todos failed: {}", todos.length, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public int[] deleteAllById(long[] ids) {
+        try {
+            return executeBatch("DELETE FROM todos WHERE list_id = ? AND id = ?", ids.length, (statement, row) -> {
+                statement.setLong(1, listId);
+                statement.setLong(2, ids[row]);
+            });
+        } catch (SQLException e) {
+            Log.error("Deleting {} todos by id failed: {}", ids.length, e.getMessage());
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowBinder {
+        void bind(PreparedStatement statement, int row) throws SQLException;
+    }
+
+    /**
+     * Runs the statement once per row using JDBC batching, {@link #batchSize}
+     * rows per round trip, all in one transaction.
+     *
+     * @see https://docs.oracle.com/javase/tutorial/jdbc/basics/retrieving.html#batch_updates
+     *
+     * @return the update count of every row
+     */
+    private int[] executeBatch(String sql, int rows, RowBinder binder) throws SQLException {
+        int[] counts = new int[rows];
+        if (rows == 0) {
+            return counts;
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int start = 0; start < rows; start += batchSize) {
+                    int end = Math.min(rows, start + batchSize);
+                    for (int row = start; row < end; row++) {
+                        binder.bind(statement, row);
+                        statement.addBatch();
+                    }
+
+                    int[] chunk = statement.executeBatch();
+                    System.arraycopy(chunk, 0, counts, start, chunk.length);
+                }
+
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        return counts;
     }
 
     @Override
     public int deleteBy(Predicate<Todo> predicate) {
-        Collection<Todo> allTodos = findAll();
+        if (predicate instanceof TodoCriteria) {
+            return deleteBy((TodoCriteria) predicate);
+        }
+
+        if (transaction == null) {
+            // Read and deleted in one transaction, so also read from where it is deleted
+            Integer deleted = inTransaction(repository -> repository.deleteBy(predicate));
+            return deleted == null ? -1 : deleted;
+        }
 
-        // Todo: Delete collection in one go
-        return (int) allTodos.stream()
+        // Opaque predicates cannot be translated to SQL, filter in memory
+        List<Todo> matching = findAll()
+                .stream()
                 .filter(predicate)
-                .map(todo -> delete(todo.getId()))
-                .filter(i -> i == 1).count();
+                .collect(Collectors.toList());
+
+        return matching.isEmpty() ? 0 : delete(matching);
+    }
+
+    @Override
+    public int deleteBy(TodoCriteria criteria) {
+        TodoCriteria inList = criteria.andListId(listId);
+        String sql = "DELETE FROM todos" + inList.toWhereClause();
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)
+        ) {
+            inList.bind(statement, 1);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            Log.error("Deleting todos by {} failed: {}", criteria, e.getMessage());
+            return -1;
+        }
     }
 
     @Override
     public void deleteAll() {
-        try (Statement statement = dataSource.getConnection().createStatement()) {
-            statement.execute("DELETE FROM todos");
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("DELETE FROM todos WHERE list_id = ?")
+        ) {
+            statement.setLong(1, listId);
+            statement.executeUpdate();
         } catch (SQLException e) {
-            System.out.println("clearing repository failed: " + e.getMessage());
+            Log.error("clearing repository failed: {}", e.getMessage());
         }
     }
 
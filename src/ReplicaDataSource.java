@@ -0,0 +1,209 @@
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Hands out connections to read replicas, spreading them round robin, for
+ * the reads of {@link RdbmsRepository} that need not see the latest writes.
+ *
+ * A replica that fails to give a connection is ejected for a while and
+ * tried again after that. With every replica ejected, reads go to the
+ * primary.
+ *
+ * Replicas lag behind the primary, so a client that just wrote may not see
+ * its write there. Requests marked by {@link #pinToPrimary()}, those of
+ * clients that wrote recently, therefore read from the primary, see
+ * {@code PrimaryPinFilter}. Whether a request read from a replica can be
+ * checked with {@link #isReplicaRead()}.
+ *
+ * Any data sources will do as replicas, e.g. separate in-memory databases
+ * to try out the routing.
+ */
+public class ReplicaDataSource implements DataSource {
+
+    private static final ThreadLocal<Routing> ROUTING = ThreadLocal.withInitial(Routing::new);
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final long ejectNanos;
+
+    private final AtomicInteger next = new AtomicInteger();
+    // By replica, the time until which it is ejected, 0 if it is not
+    private final AtomicLongArray ejectedUntil;
+
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder ejections = new LongAdder();
+
+    /**
+     * @param ejectMillis how long a replica that failed is left out
+     */
+    public ReplicaDataSource(DataSource primary, List<? extends DataSource> replicas, long ejectMillis) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("At least one replica is needed");
+        }
+
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas);
+        this.ejectNanos = ejectMillis * 1_000_000;
+        this.ejectedUntil = new AtomicLongArray(replicas.size());
+    }
+
+    /**
+     * Has the reads of the current thread go to the primary until
+     * {@link #endRequest()}.
+     */
+    public static void pinToPrimary() {
+        ROUTING.get().pinned = true;
+    }
+
+    /**
+     * @return whether a read of the current thread went to a replica since
+     *         the last {@link #endRequest()}
+     */
+    public static boolean isReplicaRead() {
+        return ROUTING.get().replicaRead;
+    }
+
+    /**
+     * Forgets the routing of the current thread, once a request is done.
+     */
+    public static void endRequest() {
+        ROUTING.remove();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Routing routing = ROUTING.get();
+        if (routing.pinned) {
+            primaryReads.increment();
+            return primary.getConnection();
+        }
+
+        int count = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), count);
+        for (int i = 0; i < count; i++) {
+            int replica = (start + i) % count;
+
+            long until = ejectedUntil.get(replica);
+            if (until != 0 && System.nanoTime() - until < 0) {
+                continue;
+            }
+
+            try {
+                Connection connection = replicas.get(replica).getConnection();
+                if (until != 0 && ejectedUntil.compareAndSet(replica, until, 0)) {
+                    Log.info("Replica {} is back", replica);
+                }
+
+                replicaReads.increment();
+                routing.replicaRead = true;
+                return connection;
+            } catch (SQLException e) {
+                // 0 means not ejected, so never store it
+                ejectedUntil.set(replica, (System.nanoTime() + ejectNanos) | 1);
+                ejections.increment();
+                Log.warn("Ejecting replica {} for {} ms: {}", replica, ejectNanos / 1_000_000, e.getMessage());
+            }
+        }
+
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections use the configured credentials");
+    }
+
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    public int getHealthyReplicaCount() {
+        int healthy = 0;
+        long now = System.nanoTime();
+        for (int i = 0; i < ejectedUntil.length(); i++) {
+            long until = ejectedUntil.get(i);
+            if (until == 0 || now - until >= 0) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    public long getReplicaReads() {
+        return replicaReads.sum();
+    }
+
+    public long getPrimaryReads() {
+        return primaryReads.sum();
+    }
+
+    public long getEjections() {
+        return ejections.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicaDataSource{" +
+                "replicas=" + getReplicaCount() +
+                ", healthy=" + getHealthyReplicaCount() +
+                ", replicaReads=" + getReplicaReads() +
+                ", primaryReads=" + getPrimaryReads() +
+                ", ejections=" + getEjections() +
+                '}';
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private static final class Routing {
+
+        private boolean pinned;
+        private boolean replicaRead;
+    }
+}
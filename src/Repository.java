@@ -1,6 +1,7 @@
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 interface Repository {
@@ -19,6 +20,46 @@ interface Repository {
      */
     List<Todo> findAll();
 
+    /**
+     * Returns the entities matching the given criteria, newest first.
+     *
+     * @param criteria to filter by
+     *
+     * @return matching entities
+     */
+    List<Todo> findAll(TodoCriteria criteria);
+
+    /**
+     * Returns all the entities, newest first, together with the number of
+     * active and completed entities, reading them in one go.
+     *
+     * @return the index or an empty index if it cannot be read
+     */
+    TodoIndex findIndex();
+
+    /**
+     * Returns the requested page of entities, newest first, together with the
+     * number of active and completed entities, reading them in one go.
+     *
+     * @param page to read
+     *
+     * @return the index or an empty index if it cannot be read
+     */
+    TodoIndex findIndex(PageRequest page);
+
+    /**
+     * Opens a cursor over all entities, newest first, reading them while they
+     * are iterated instead of up front. The counts are read when opening and
+     * are consistent with the entities. The cursor must be closed.
+     *
+     * @return the cursor or an empty cursor if it cannot be opened
+     */
+    TodoCursor openIndex();
+
+    /**
+     * @deprecated filters in memory, use {@link #findAll(TodoCriteria)} instead
+     */
+    @Deprecated
     List<Todo> findAllByStatus(Predicate<Map.Entry<Long, Todo>> entryPredicate);
 
     /**
@@ -28,6 +69,16 @@ interface Repository {
      */
     Todo findOne(Long id);
 
+    /**
+     * Returns the entity with the given id like {@link #findOne(Long)} and,
+     * within {@link #inTransaction(Function)}, keeps other transactions from
+     * changing it until the transaction ends, so it can be read, modified and
+     * written back safely.
+     *
+     * @return the entity or {@code null} if not found
+     */
+    Todo findOneForUpdate(Long id);
+
     /**
      * Saves the given entity in the repository, overwriting any previously saved
      * version and <strong>returning a new, possibly modified copy of the saved
@@ -40,6 +91,52 @@ interface Repository {
      */
     Todo save(Todo entity);
 
+    /**
+     * Saves all the given entities in one transaction, overwriting any
+     * previously saved versions.
+     *
+     * @param entities to save
+     *
+     * @return the update count of every entity, in iteration order, or
+     *         {@code null} if saving failed and nothing was saved
+     */
+    int[] saveAll(Collection<Todo> entities);
+
+    /**
+     * Flips the status of the entity with the given id between active and
+     * completed, in place.
+     *
+     * @param id of the entity to toggle
+     *
+     * @return the entity as stored after toggling or {@code null} if not found
+     *         or toggling failed
+     */
+    Todo toggleStatus(Long id);
+
+    /**
+     * Sets the status of the entities matching the given criteria in one go.
+     *
+     * @param criteria to match entities to update
+     * @param status to set
+     *
+     * @return the number of updated entities or {@code -1} if updating failed
+     */
+    int updateStatus(TodoCriteria criteria, Todo.Status status);
+
+    /**
+     * Applies the given writes in order, as one transaction where possible so
+     * they take a single commit.
+     *
+     * @param writes to apply
+     *
+     * @return the result of every write, in order, as the single operation
+     *         of its kind returns it: the saved {@link Todo} or {@code null},
+     *         the toggled {@link Todo} or {@code null}, the delete count as
+     *         an {@link Integer}. {@code null} if applying failed and nothing
+     *         was written.
+     */
+    Object[] writeAll(List<TodoWrite> writes);
+
     /**
      * Deletes the given entity from the repository.
      *
@@ -61,13 +158,71 @@ interface Repository {
      */
     int delete(Collection<Todo> entities);
 
+    /**
+     * Deletes the entities identified by the given ids in one transaction.
+     *
+     * @param ids of the entities to delete
+     *
+     * @return the delete count of every id, in order, or {@code null} if
+     *         deleting failed and nothing was deleted
+     */
+    int[] deleteAllById(long[] ids);
+
+    /**
+     * Deletes the entities matching the given predicate. A {@link TodoCriteria}
+     * is handled like {@link #deleteBy(TodoCriteria)}, any other predicate is
+     * evaluated in memory against all entities.
+     *
+     * @param predicate to match entities to delete
+     *
+     * @return the number of deleted entities or {@code -1} if deleting failed
+     */
     int deleteBy(Predicate<Todo> predicate);
 
+    /**
+     * Deletes the entities matching the given criteria in one go.
+     *
+     * @param criteria to match entities to delete
+     *
+     * @return the number of deleted entities or {@code -1} if deleting failed
+     */
+    int deleteBy(TodoCriteria criteria);
+
     /**
      * Deletes all entities from the repository.
      */
     void deleteAll();
 
+    /**
+     * Runs the given work as one unit: the operations it runs on the
+     * repository passed to it share one connection and one transaction,
+     * committed once the work returns. The transaction is rolled back if
+     * the work throws, passing the exception on, or if any operation in it
+     * failed.
+     *
+     * @param work to run, using only the repository passed to it
+     *
+     * @return the result of the work or {@code null} if the transaction
+     *         failed and nothing was written
+     */
+    <T> T inTransaction(Function<Repository, T> work);
+
+    /**
+     * Returns the repository of the given list: every operation of it only
+     * reads and writes the entities of that list, and entities it saves are
+     * put in that list. Lists are independent, one list cannot see or change
+     * the entities of another.
+     *
+     * The repository set up at startup is the one of {@link Todo#DEFAULT_LIST}
+     * and the one to ask for other lists, their repositories need not know
+     * where other lists are stored.
+     *
+     * @param listId of the list
+     *
+     * @return the repository of the list
+     */
+    Repository forList(long listId);
+
     /**
      * Checks whether an entity with the given id can be found in the repository.
      *
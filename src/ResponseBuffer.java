@@ -0,0 +1,58 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Growable byte buffer a response is rendered into before it is sent, so the
+ * exact {@code Content-Length} is known up front.
+ *
+ * Each thread reuses its own buffers across requests. Buffers that grew past
+ * {@link #MAX_RETAINED_BYTES} for an exceptionally large response are not
+ * kept, so one big page does not pin memory for the lifetime of the thread.
+ */
+public final class ResponseBuffer extends ByteArrayOutputStream {
+
+    private static final int INITIAL_BYTES = 16 * 1024;
+    private static final int MAX_RETAINED_BYTES = 1024 * 1024;
+
+    private static final ThreadLocal<ResponseBuffer> BODY = new ThreadLocal<>();
+    private static final ThreadLocal<ResponseBuffer> COMPRESSED = new ThreadLocal<>();
+
+    private ResponseBuffer() {
+        super(INITIAL_BYTES);
+    }
+
+    /**
+     * Returns the empty body buffer of the current thread.
+     */
+    public static ResponseBuffer body() {
+        return acquire(BODY);
+    }
+
+    /**
+     * Returns the empty buffer of the current thread to compress a body into.
+     */
+    public static ResponseBuffer compressed() {
+        return acquire(COMPRESSED);
+    }
+
+    private static ResponseBuffer acquire(ThreadLocal<ResponseBuffer> local) {
+        ResponseBuffer buffer = local.get();
+        if (buffer == null || buffer.buf.length > MAX_RETAINED_BYTES) {
+            buffer = new ResponseBuffer();
+            local.set(buffer);
+        }
+
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Writes the buffered bytes without copying them first, unlike
+     * {@link #toByteArray()}.
+     */
+    @Override
+    public synchronized void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+}
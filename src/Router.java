@@ -0,0 +1,214 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Maps a request method and path to a handler.
+ *
+ * Routes are registered once at startup and only read afterwards, safely
+ * published through a final field of the owner. Paths without parameters
+ * are found with a single hash lookup, paths with parameters such as
+ * {@code /todos/{id}} by walking a tree of path segments, one hash lookup
+ * per segment. A literal segment wins over a parameter.
+ *
+ * @param <H> type of the handlers
+ */
+public final class Router<H> {
+
+    private final Map<String, Map<String, H>> staticRoutes = new HashMap<>();
+    private final Node<H> root = new Node<>();
+
+    /**
+     * Registers a handler.
+     *
+     * @param method of the request, matched ignoring case
+     * @param pattern of the path, segments in braces match any non empty
+     *                segment and are captured under the enclosed name
+     *
+     * @throws IllegalStateException if the method and pattern are taken
+     */
+    public Router<H> add(String method, String pattern, H handler) {
+        if (!pattern.startsWith("/")) {
+            throw new IllegalArgumentException("Patterns must start with /, got " + pattern);
+        }
+
+        Map<String, H> handlers;
+        if (pattern.indexOf('{') < 0) {
+            handlers = staticRoutes.computeIfAbsent(pattern, path -> new HashMap<>());
+        } else {
+            Node<H> node = root;
+            for (String segment : pattern.substring(1).split("/", -1)) {
+                node = node.child(segment, pattern);
+            }
+            handlers = node.handlers;
+            node.pattern = pattern;
+        }
+
+        if (handlers.putIfAbsent(method.toUpperCase(Locale.ROOT), handler) != null) {
+            throw new IllegalStateException("Route " + method + " " + pattern + " registered twice");
+        }
+        return this;
+    }
+
+    /**
+     * Finds the handler for the given request.
+     *
+     * @return the match, see {@link Match#getStatus()} for whether a handler
+     *         was found
+     */
+    public Match<H> match(String method, String path) {
+        Map<String, String> params = Collections.emptyMap();
+        String pattern = path;
+
+        Map<String, H> handlers = staticRoutes.get(path);
+        if (handlers == null && path.startsWith("/")) {
+            params = new HashMap<>(4);
+            Node<H> node = root.find(path, 1, params);
+            handlers = node == null ? null : node.handlers;
+            pattern = node == null ? null : node.pattern;
+        }
+
+        if (handlers == null || handlers.isEmpty()) {
+            return new Match<>(404, null, null, params, Collections.<String>emptySet());
+        }
+
+        H handler = handlers.get(method);
+        if (handler == null) {
+            handler = handlers.get(method.toUpperCase(Locale.ROOT));
+        }
+
+        return handler == null
+                ? new Match<>(405, null, pattern, params, new TreeSet<>(handlers.keySet()))
+                : new Match<>(200, handler, pattern, params, handlers.keySet());
+    }
+
+    private static final class Node<H> {
+
+        private final Map<String, H> handlers = new HashMap<>();
+        private final Map<String, Node<H>> literals = new HashMap<>();
+        private Node<H> parameter;
+        private String parameterName;
+        private String pattern;
+
+        Node<H> child(String segment, String pattern) {
+            if (segment.startsWith("{") && segment.endsWith("}")) {
+                String name = segment.substring(1, segment.length() - 1);
+                if (parameter == null) {
+                    parameter = new Node<>();
+                    parameterName = name;
+                } else if (!parameterName.equals(name)) {
+                    throw new IllegalStateException("Parameter {" + name + "} of " + pattern
+                            + " clashes with {" + parameterName + "}");
+                }
+                return parameter;
+            }
+
+            return literals.computeIfAbsent(segment, s -> new Node<>());
+        }
+
+        /**
+         * Matches the rest of the path, starting at the given index, capturing
+         * parameters into the given map.
+         */
+        Node<H> find(String path, int start, Map<String, String> params) {
+            int end = path.indexOf('/', start);
+            boolean last = end < 0;
+            if (last) {
+                end = path.length();
+            }
+
+            String segment = path.substring(start, end);
+
+            Node<H> literal = literals.get(segment);
+            if (literal != null) {
+                Node<H> found = last ? literal : literal.find(path, end + 1, params);
+                if (found != null && !found.handlers.isEmpty()) {
+                    return found;
+                }
+            }
+
+            if (parameter != null && !segment.isEmpty()) {
+                Node<H> found = last ? parameter : parameter.find(path, end + 1, params);
+                if (found != null && !found.handlers.isEmpty()) {
+                    params.put(parameterName, segment);
+                    return found;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Outcome of routing a request.
+     */
+    public static final class Match<H> {
+
+        private final int status;
+        private final H handler;
+        private final String pattern;
+        private final Map<String, String> params;
+        private final Set<String> allowedMethods;
+
+        Match(int status, H handler, String pattern, Map<String, String> params, Set<String> allowedMethods) {
+            this.status = status;
+            this.handler = handler;
+            this.pattern = pattern;
+            this.params = params;
+            this.allowedMethods = allowedMethods;
+        }
+
+        /**
+         * @return {@code 200} if a handler was found, {@code 404} if no route
+         *         has the path or {@code 405} if no route of the path has the
+         *         method
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the handler or {@code null} unless the status is {@code 200}
+         */
+        public H getHandler() {
+            return handler;
+        }
+
+        /**
+         * @return the pattern of the route matched or {@code null} if the
+         *         status is {@code 404}
+         */
+        public String getPattern() {
+            return pattern;
+        }
+
+        /**
+         * @return the value of the path parameter or {@code null}
+         */
+        public String getParam(String name) {
+            return params.get(name);
+        }
+
+        /**
+         * @return the methods the path can be requested with, for the
+         *         {@code Allow} header of a 405
+         */
+        public Set<String> getAllowedMethods() {
+            return allowedMethods;
+        }
+
+        @Override
+        public String toString() {
+            return "Match{" +
+                    "status=" + status +
+                    ", handler=" + handler +
+                    ", pattern='" + pattern + '\'' +
+                    ", params=" + params +
+                    ", allowedMethods=" + allowedMethods +
+                    '}';
+        }
+    }
+}
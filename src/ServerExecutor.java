@@ -0,0 +1,257 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the exchanges of the HTTP server and keeps track of how busy it is.
+ *
+ * Exchanges that cannot be accepted, because the pool queue is full, too many
+ * are in flight or one waited in the queue for longer than allowed, are not
+ * dropped silently. They run marked as shed, and the {@link OverloadFilter}
+ * answers them with a 503 before any handler runs. Clients thus learn about
+ * saturation immediately instead of waiting in an ever growing queue.
+ *
+ * Shed exchanges still read the request before being answered, so the ones
+ * rejected on submission run on threads of their own, up to
+ * {@code todomvc.server.shedThreads}, never on the server's dispatcher
+ * thread, where a slow client would hold up accepting every other. As many
+ * slow clients as there are such threads still delay the 503s behind them.
+ * Once {@code todomvc.server.shedQueueCapacity} more wait for those threads,
+ * further connections are refused: the server closes them without an answer.
+ *
+ * Three modes are supported via {@code todomvc.server.executor}:
+ * <ul>
+ *     <li>{@code dispatcher}: no executor, exchanges run on the server's
+ *     single dispatcher thread</li>
+ *     <li>{@code pool}: a fixed pool of platform threads with a bounded queue</li>
+ *     <li>{@code virtual}: a virtual thread per exchange, limited in the
+ *     number in flight (requires Java 21)</li>
+ * </ul>
+ */
+public class ServerExecutor implements Executor {
+
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+
+    private final String mode;
+    private final Executor delegate;
+    private final ExecutorService service;
+    private final int maxInFlight;
+    private final long maxQueueNanos;
+    private final ExecutorService shedding;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+    private final LongAdder totalQueuedNanos = new LongAdder();
+    private final AtomicLong maxQueuedNanos = new AtomicLong();
+
+    ServerExecutor(String mode, ExecutorService service, int maxInFlight, long maxQueueMillis) {
+        this.mode = mode;
+        this.delegate = service;
+        this.service = service;
+        this.maxInFlight = maxInFlight;
+        this.maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueMillis);
+        ThreadPoolExecutor shedding = newPool("http-shed-", Integer.getInteger("todomvc.server.shedThreads", 16),
+                new ArrayBlockingQueue<>(Integer.getInteger("todomvc.server.shedQueueCapacity", 1024)));
+        // Threads are only kept while shedding
+        shedding.allowCoreThreadTimeOut(true);
+        this.shedding = shedding;
+    }
+
+    /**
+     * Creates the executor configured by the {@code todomvc.server.*} system
+     * properties.
+     *
+     * @return the executor or {@code null} to run on the dispatcher thread
+     */
+    public static ServerExecutor fromSystemProperties() {
+        String mode = System.getProperty("todomvc.server.executor", "pool");
+        int cores = Runtime.getRuntime().availableProcessors();
+        long maxQueueMillis = Long.getLong("todomvc.server.maxQueueMillis", 1000L);
+
+        switch (mode) {
+            case "dispatcher":
+                return null;
+            case "virtual":
+                ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+                if (virtual != null) {
+                    return new ServerExecutor(mode, virtual,
+                            Integer.getInteger("todomvc.server.maxConcurrency", 1024), maxQueueMillis);
+                }
+                Log.warn("Virtual threads need Java 21 or later, using a thread pool instead");
+                return newPoolExecutor(cores, maxQueueMillis);
+            case "pool":
+                return newPoolExecutor(cores, maxQueueMillis);
+            default:
+                throw new IllegalArgumentException("Unknown executor mode " + mode
+                        + ", expected one of dispatcher, pool or virtual");
+        }
+    }
+
+    private static ServerExecutor newPoolExecutor(int cores, long maxQueueMillis) {
+        int threads = Integer.getInteger("todomvc.server.threads", cores * 2);
+        int queueCapacity = Integer.getInteger("todomvc.server.queueCapacity", 256);
+        // The default AbortPolicy lets execute() see the rejection and shed the exchange
+        ExecutorService pool = newPool("http-worker-", threads, new ArrayBlockingQueue<>(queueCapacity));
+        return new ServerExecutor("pool", pool, Integer.MAX_VALUE, maxQueueMillis);
+    }
+
+    private static ThreadPoolExecutor newPool(String namePrefix, int threads, BlockingQueue<Runnable> queue) {
+        final AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = task -> {
+            Thread thread = new Thread(task, namePrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, queue, threadFactory);
+    }
+
+    // Looked up reflectively, the code base still compiles for Java 8
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the exchange running on the current thread was shed and
+     * should be answered with a 503 without doing any work.
+     */
+    public static boolean isShedding() {
+        return SHEDDING.get() != null;
+    }
+
+    @Override
+    public void execute(final Runnable exchange) {
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            shed(exchange);
+            return;
+        }
+
+        final long enqueued = System.nanoTime();
+        queued.incrementAndGet();
+
+        try {
+            delegate.execute(() -> {
+                queued.decrementAndGet();
+                active.incrementAndGet();
+                try {
+                    long waited = System.nanoTime() - enqueued;
+                    recordQueued(waited);
+
+                    if (waited > maxQueueNanos) {
+                        runShed(exchange);
+                    } else {
+                        exchange.run();
+                    }
+                } finally {
+                    active.decrementAndGet();
+                    inFlight.decrementAndGet();
+                    completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            inFlight.decrementAndGet();
+            shed(exchange);
+        }
+    }
+
+    // Called on the dispatcher thread, which must not read the request. When
+    // even the shed queue is full the rejection reaches the server, which
+    // closes the connection.
+    private void shed(Runnable exchange) {
+        try {
+            shedding.execute(() -> runShed(exchange));
+        } catch (RejectedExecutionException e) {
+            refused.increment();
+            throw e;
+        }
+    }
+
+    private void runShed(Runnable exchange) {
+        shed.increment();
+        SHEDDING.set(Boolean.TRUE);
+        try {
+            exchange.run();
+        } finally {
+            SHEDDING.remove();
+        }
+    }
+
+    private void recordQueued(long nanos) {
+        totalQueuedNanos.add(nanos);
+
+        long max = maxQueuedNanos.get();
+        while (nanos > max && !maxQueuedNanos.compareAndSet(max, nanos)) {
+            max = maxQueuedNanos.get();
+        }
+    }
+
+    public void shutdown() {
+        service.shutdown();
+        shedding.shutdown();
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    public long getRefusedCount() {
+        return refused.sum();
+    }
+
+    public long getTotalQueuedNanos() {
+        return totalQueuedNanos.sum();
+    }
+
+    public long getMaxQueuedNanos() {
+        return maxQueuedNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ServerExecutor{" +
+                "mode=" + mode +
+                ", queueDepth=" + getQueueDepth() +
+                ", active=" + getActiveCount() +
+                ", completed=" + getCompletedCount() +
+                ", shed=" + getShedCount() +
+                ", refused=" + getRefusedCount() +
+                ", maxQueuedNanos=" + getMaxQueuedNanos() +
+                '}';
+    }
+}
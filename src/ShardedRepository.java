@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spreads lists over several repositories, the shards, each usually a
+ * database of its own with its own connection pool. A list lives in exactly
+ * one shard, so everything done with the repository of a list, see
+ * {@link #forList(long)}, touches that shard only.
+ *
+ * The shard of a list is the hash of its id modulo the number of shards,
+ * unless the shard map places the list explicitly, e.g. a busy list moved
+ * to a shard of its own. The hash spreads consecutive ids evenly. Adding a
+ * shard moves most lists, so their rows have to be moved first or the lists
+ * pinned to their old shards in the map.
+ *
+ * Operations on this repository itself are those of the default list, in
+ * its shard. Nothing spans shards: there is no way to read all lists at once
+ * and a transaction only covers the list it was started from.
+ */
+public class ShardedRepository extends ForwardingRepository {
+
+    private final List<Repository> shards;
+    private final Map<Long, Integer> placements;
+
+    /**
+     * @param shards repositories of the default list of every shard, in shard
+     *               order
+     * @param placements shard by list id for lists not placed by their hash
+     */
+    public ShardedRepository(List<? extends Repository> shards, Map<Long, Integer> placements) {
+        super(checked(shards, placements).get(shardOf(Todo.DEFAULT_LIST, shards.size(), placements)));
+
+        this.shards = new ArrayList<>(shards);
+        this.placements = new HashMap<>(placements);
+    }
+
+    public ShardedRepository(List<? extends Repository> shards) {
+        this(shards, Collections.<Long, Integer>emptyMap());
+    }
+
+    private static List<? extends Repository> checked(List<? extends Repository> shards,
+                                                      Map<Long, Integer> placements) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+
+        for (Map.Entry<Long, Integer> placement : placements.entrySet()) {
+            if (placement.getValue() < 0 || placement.getValue() >= shards.size()) {
+                throw new IllegalArgumentException("List " + placement.getKey() + " placed in shard "
+                        + placement.getValue() + " but there are " + shards.size() + " shards");
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Reads a shard map, comma separated {@code listId=shard} pairs, e.g.
+     * {@code 42=1,7=0}. Shards are numbered from {@code 0}.
+     *
+     * @return shard by list id, empty for a {@code null} or empty map
+     */
+    public static Map<Long, Integer> parseShardMap(String shardMap) {
+        Map<Long, Integer> placements = new HashMap<>();
+        if (shardMap == null || shardMap.trim().isEmpty()) {
+            return placements;
+        }
+
+        for (String pair : shardMap.split(",")) {
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected listId=shard in the shard map, got " + pair);
+            }
+            placements.put(Long.parseLong(pair.substring(0, equals).trim()),
+                    Integer.parseInt(pair.substring(equals + 1).trim()));
+        }
+        return placements;
+    }
+
+    /**
+     * @return the shard the given list lives in, numbered from {@code 0}
+     */
+    public int shardOf(long listId) {
+        return shardOf(listId, shards.size(), placements);
+    }
+
+    private static int shardOf(long listId, int shardCount, Map<Long, Integer> placements) {
+        Integer placed = placements.get(listId);
+        if (placed != null) {
+            return placed;
+        }
+        // Mixed, so sequential ids do not pile up in one shard
+        return (int) Long.remainderUnsigned(Hashing.mix(listId), shardCount);
+    }
+
+    @Override
+    public Repository forList(long listId) {
+        return shards.get(shardOf(listId)).forList(listId);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedRepository{" +
+                "shards=" + shards.size() +
+                ", placements=" + placements +
+                '}';
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates time ordered ids that are unique across instances without any
+ * coordination, as long as every instance uses its own node id.
+ *
+ * An id packs the milliseconds since {@link #EPOCH} into 41 bits, the node id
+ * into 10 bits and a per-millisecond counter into 12 bits, in that order, so
+ * ids sort by creation time. Up to 4096 ids per millisecond and node are
+ * generated without waiting; beyond that the generator runs ahead of the
+ * clock for a little while instead of blocking. A clock moving backwards is
+ * handled the same way, so ids never repeat within a process.
+ *
+ * @see https://blog.twitter.com/engineering/en_us/a/2010/announcing-snowflake.html
+ */
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    /**
+     * 2017-01-01T00:00:00Z, start of the 69 years the timestamp bits cover.
+     */
+    public static final long EPOCH = 1483228800000L;
+
+    public static final int MAX_NODE_ID = (1 << 10) - 1;
+
+    private static final int NODE_SHIFT = 12;
+    private static final int TIMESTAMP_SHIFT = 22;
+    private static final long SEQUENCE_MASK = (1 << NODE_SHIFT) - 1;
+
+    /**
+     * Generator shared by code creating todos without an explicit generator.
+     */
+    public static final SnowflakeIdGenerator DEFAULT = new SnowflakeIdGenerator(Integer.getInteger("todomvc.nodeId", 0));
+
+    private final long node;
+
+    /**
+     * Last allocated timestamp and counter, as {@code millis << 12 | counter}.
+     */
+    private final AtomicLong last = new AtomicLong();
+
+    public SnowflakeIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ", got " + nodeId);
+        }
+        this.node = (long) nodeId << NODE_SHIFT;
+    }
+
+    @Override
+    public long nextId() {
+        long now = (System.currentTimeMillis() - EPOCH) << NODE_SHIFT;
+
+        long previous;
+        long next;
+        do {
+            previous = last.get();
+            next = Math.max(now, previous + 1);
+        } while (!last.compareAndSet(previous, next));
+
+        return (next >>> NODE_SHIFT) << TIMESTAMP_SHIFT | node | (next & SEQUENCE_MASK);
+    }
+
+    @Override
+    public long[] nextIds(int count) {
+        long[] ids = new long[count];
+        if (count == 0) {
+            return ids;
+        }
+
+        long now = (System.currentTimeMillis() - EPOCH) << NODE_SHIFT;
+
+        // Reserve the whole range with a single compare-and-set
+        long previous;
+        long first;
+        do {
+            previous = last.get();
+            first = Math.max(now, previous + 1);
+        } while (!last.compareAndSet(previous, first + count - 1));
+
+        for (int i = 0; i < count; i++) {
+            long next = first + i;
+            ids[i] = (next >>> NODE_SHIFT) << TIMESTAMP_SHIFT | node | (next & SEQUENCE_MASK);
+        }
+        return ids;
+    }
+}
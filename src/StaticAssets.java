@@ -0,0 +1,217 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-memory copy of the static files served to the browser.
+ *
+ * All files with a known content type are read once at startup, together
+ * with a strong ETag and, for text formats, a gzipped variant. A
+ * {@code <name>.gz} file next to an asset is used as its gzipped variant
+ * instead of compressing at startup.
+ *
+ * Assets are looked up by file name only, which also keeps requests from
+ * escaping the asset directory.
+ */
+public class StaticAssets {
+
+    private static final Map<String, String> CONTENT_TYPES;
+    private static final Set<String> COMPRESSIBLE;
+
+    static {
+        Map<String, String> types = new HashMap<>();
+        types.put("css", "text/css; charset=utf-8");
+        types.put("js", "application/javascript; charset=utf-8");
+        types.put("html", "text/html; charset=utf-8");
+        types.put("txt", "text/plain; charset=utf-8");
+        types.put("json", "application/json; charset=utf-8");
+        types.put("map", "application/json; charset=utf-8");
+        types.put("svg", "image/svg+xml");
+        types.put("png", "image/png");
+        types.put("jpg", "image/jpeg");
+        types.put("jpeg", "image/jpeg");
+        types.put("gif", "image/gif");
+        types.put("ico", "image/x-icon");
+        types.put("webp", "image/webp");
+        types.put("woff", "font/woff");
+        types.put("woff2", "font/woff2");
+        CONTENT_TYPES = Collections.unmodifiableMap(types);
+
+        Set<String> compressible = new HashSet<>();
+        Collections.addAll(compressible, "css", "js", "html", "txt", "json", "map", "svg", "ico");
+        COMPRESSIBLE = Collections.unmodifiableSet(compressible);
+    }
+
+    private final Path root;
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+
+    public StaticAssets(Path root) throws IOException {
+        this.root = root;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+            for (Path file : files) {
+                reload(file);
+            }
+        }
+    }
+
+    public static StaticAssets fromSystemProperties() throws IOException {
+        StaticAssets assets = new StaticAssets(Paths.get(System.getProperty("todomvc.assets.dir", "src")));
+
+        if (Boolean.getBoolean("todomvc.assets.watch")) {
+            assets.watch();
+        }
+
+        return assets;
+    }
+
+    /**
+     * Returns the asset with the given file name or {@code null} if none.
+     */
+    public Asset get(String fileName) {
+        return assets.get(fileName);
+    }
+
+    /**
+     * Reads the given file again, dropping it if it is gone. Files that are
+     * not assets are ignored.
+     */
+    public void reload(Path file) throws IOException {
+        String fileName = file.getFileName().toString();
+
+        if (fileName.endsWith(".gz")) {
+            file = file.resolveSibling(fileName.substring(0, fileName.length() - 3));
+            fileName = file.getFileName().toString();
+        }
+
+        String extension = extensionOf(fileName);
+        String contentType = CONTENT_TYPES.get(extension);
+        if (contentType == null) {
+            return;
+        }
+
+        if (!Files.isRegularFile(file) || !Files.isReadable(file)) {
+            assets.remove(fileName);
+            return;
+        }
+
+        byte[] bytes = Files.readAllBytes(file);
+        byte[] gzipped = null;
+
+        Path precompressed = file.resolveSibling(fileName + ".gz");
+        if (Files.isReadable(precompressed)) {
+            gzipped = Files.readAllBytes(precompressed);
+        } else if (COMPRESSIBLE.contains(extension)) {
+            gzipped = gzip(bytes);
+        }
+
+        if (gzipped != null && gzipped.length >= bytes.length) {
+            gzipped = null;
+        }
+
+        assets.put(fileName, new Asset(bytes, gzipped, contentType, strongEtag(bytes)));
+    }
+
+    /**
+     * Reloads assets whenever they change on disk, drops them once deleted.
+     */
+    public FileWatcher watch() throws IOException {
+        return new FileWatcher(root, changed -> {
+            try {
+                reload(changed);
+            } catch (IOException e) {
+                Log.error("Reloading asset {} failed: {}", changed, e.getMessage());
+            }
+        });
+    }
+
+    private static String extensionOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String strongEtag(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+
+            StringBuilder etag = new StringBuilder("\"");
+            for (int i = 0; i < 16; i++) {
+                etag.append(String.format("%02x", digest[i]));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be available", e);
+        }
+    }
+
+    public static final class Asset {
+
+        private final byte[] bytes;
+        private final byte[] gzipped;
+        private final String contentType;
+        private final String etag;
+        private final String gzippedEtag;
+
+        private Asset(byte[] bytes, byte[] gzipped, String contentType, String etag) {
+            this.bytes = bytes;
+            this.gzipped = gzipped;
+            this.contentType = contentType;
+            this.etag = etag;
+            // Each representation needs its own strong validator
+            this.gzippedEtag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the gzipped bytes or {@code null} if compressing does not pay off
+         */
+        public byte[] getGzipped() {
+            return gzipped;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getGzippedEtag() {
+            return gzippedEtag;
+        }
+
+        /**
+         * Checks an {@code If-None-Match} header against both representations,
+         * using the weak comparison RFC 7232 prescribes for it.
+         *
+         * @see https://tools.ietf.org/html/rfc7232#section-3.2
+         */
+        public boolean matches(String ifNoneMatch) {
+            return Etags.matches(ifNoneMatch, etag) || (gzipped != null && Etags.matches(ifNoneMatch, gzippedEtag));
+        }
+    }
+}
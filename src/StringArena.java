@@ -0,0 +1,136 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Keeps strings off the heap, as UTF-8 in direct buffers allocated a chunk
+ * at a time, so millions of them cost the garbage collector nothing. A
+ * string is referred to by a {@code long}: the chunk in the upper half, the
+ * offset in the chunk in the lower half.
+ *
+ * The arena only grows, strings are never overwritten or freed one by one.
+ * Space no longer referred to is reclaimed by copying the live strings to a
+ * new arena, see {@link #copy(StringArena, long)}.
+ *
+ * Not thread safe, the owner guards it.
+ */
+final class StringArena {
+
+    /**
+     * Most UTF-8 bytes of a string, its length is stored in two bytes.
+     */
+    static final int MAX_BYTES = 0xFFFF;
+
+    private static final int LENGTH_BYTES = 2;
+
+    private final int chunkBytes;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private int position;
+    private long usedBytes;
+
+    /**
+     * @param chunkBytes size of the direct buffers allocated
+     */
+    StringArena(int chunkBytes) {
+        if (chunkBytes < LENGTH_BYTES + MAX_BYTES) {
+            throw new IllegalArgumentException("Chunks must hold the longest string, got " + chunkBytes + " bytes");
+        }
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * @return the reference of the stored string
+     *
+     * @throws IllegalArgumentException if the string is longer than
+     *                                  {@link #MAX_BYTES} in UTF-8
+     */
+    long add(String value) {
+        return add(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    long add(byte[] utf8) {
+        if (utf8.length > MAX_BYTES) {
+            throw new IllegalArgumentException("Strings are at most " + MAX_BYTES + " bytes, got " + utf8.length);
+        }
+
+        int size = LENGTH_BYTES + utf8.length;
+        if (chunks.length == 0 || position + size > chunkBytes) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = ByteBuffer.allocateDirect(chunkBytes);
+            position = 0;
+        }
+
+        ByteBuffer chunk = chunks[chunks.length - 1];
+        long ref = ((long) (chunks.length - 1) << 32) | position;
+
+        chunk.putShort(position, (short) utf8.length);
+        ByteBuffer target = chunk.duplicate();
+        target.position(position + LENGTH_BYTES);
+        target.put(utf8);
+
+        position += size;
+        usedBytes += size;
+        return ref;
+    }
+
+    /**
+     * Copies a string of another arena into this one, without decoding it.
+     *
+     * @return the reference of the copy
+     */
+    long copy(StringArena from, long ref) {
+        return add(from.getBytes(ref));
+    }
+
+    String get(long ref) {
+        return new String(getBytes(ref), StandardCharsets.UTF_8);
+    }
+
+    byte[] getBytes(long ref) {
+        ByteBuffer chunk = chunks[(int) (ref >>> 32)];
+        int offset = (int) ref;
+
+        byte[] utf8 = new byte[length(ref)];
+        ByteBuffer source = chunk.duplicate();
+        source.position(offset + LENGTH_BYTES);
+        source.get(utf8);
+        return utf8;
+    }
+
+    /**
+     * @return the number of UTF-8 bytes of the string
+     */
+    int length(long ref) {
+        return chunks[(int) (ref >>> 32)].getShort((int) ref) & 0xFFFF;
+    }
+
+    /**
+     * @return the bytes the string takes in the arena, its length included
+     */
+    int sizeOf(long ref) {
+        return LENGTH_BYTES + length(ref);
+    }
+
+    /**
+     * @return the bytes taken by strings, whether still referred to or not
+     */
+    long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return the bytes allocated off the heap
+     */
+    long getCapacityBytes() {
+        return (long) chunks.length * chunkBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "StringArena{" +
+                "chunks=" + chunks.length +
+                ", usedBytes=" + usedBytes +
+                '}';
+    }
+}
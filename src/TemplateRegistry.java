@@ -0,0 +1,108 @@
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.github.mustachejava.MustacheFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the compiled Mustache templates.
+ *
+ * Templates are compiled once, up front, and shared by all requests; a
+ * compiled {@link Mustache} is thread safe. {@link #reload()} recompiles all
+ * of them and swaps them in atomically.
+ *
+ * By default templates are loaded from the classpath. Setting
+ * {@code todomvc.templates.dir} loads them from that directory instead and
+ * {@code todomvc.templates.watch=true} additionally recompiles them whenever
+ * a file in it changes.
+ */
+public class TemplateRegistry {
+
+    private final Path directory;
+    private final String[] names;
+
+    private volatile Map<String, Mustache> templates;
+    private volatile long generation;
+
+    /**
+     * @param directory to load templates from or {@code null} for the classpath
+     * @param names of the templates to compile
+     */
+    public TemplateRegistry(Path directory, String... names) {
+        this.directory = directory;
+        this.names = names.clone();
+        reload();
+    }
+
+    public static TemplateRegistry fromSystemProperties(String... names) throws IOException {
+        String dir = System.getProperty("todomvc.templates.dir");
+        TemplateRegistry registry = new TemplateRegistry(dir == null ? null : Paths.get(dir), names);
+
+        if (dir != null && Boolean.getBoolean("todomvc.templates.watch")) {
+            registry.watch();
+        }
+
+        return registry;
+    }
+
+    /**
+     * Returns the compiled template with the given name.
+     *
+     * @throws IllegalArgumentException if no such template was registered
+     */
+    public Mustache get(String name) {
+        Mustache mustache = templates.get(name);
+        if (mustache == null) {
+            throw new IllegalArgumentException("Unknown template " + name);
+        }
+        return mustache;
+    }
+
+    /**
+     * Recompiles all templates. A fresh factory is used as the factory caches
+     * what it compiled.
+     */
+    public synchronized void reload() {
+        MustacheFactory factory = directory == null
+                ? new DefaultMustacheFactory()
+                : new DefaultMustacheFactory(directory.toFile());
+
+        Map<String, Mustache> compiled = new HashMap<>();
+        for (String name : names) {
+            compiled.put(name, factory.compile(name));
+        }
+
+        templates = Collections.unmodifiableMap(compiled);
+        generation++;
+    }
+
+    /**
+     * @return the number of times the templates were compiled, which changes
+     *         whenever what they render may have
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Recompiles the templates whenever a template file in the directory
+     * changes.
+     */
+    public FileWatcher watch() throws IOException {
+        if (directory == null) {
+            throw new IllegalStateException("Templates loaded from the classpath cannot be watched");
+        }
+
+        return new FileWatcher(directory, changed -> {
+            if (changed.getFileName().toString().endsWith(".mustache")) {
+                reload();
+                Log.info("Reloaded templates after {} changed", changed);
+            }
+        });
+    }
+}
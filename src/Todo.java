@@ -1,6 +1,13 @@
 import java.io.Serializable;
 
 public class Todo implements Serializable {
+
+    /**
+     * The list todos are in unless put in another one, the only list before
+     * there were several.
+     */
+    public static final long DEFAULT_LIST = 0L;
+
     public enum Status {
         ACTIVE("active"),
         COMPLETED("completed");
@@ -21,29 +28,48 @@ public class Todo implements Serializable {
     private final String todo;
     private final Long id;
     private final Status status;
+    private final long listId;
 
     public Todo(String todo) {
         this.todo = todo;
-        this.id = System.currentTimeMillis();
+        this.id = SnowflakeIdGenerator.DEFAULT.nextId();
         this.status = Status.ACTIVE;
+        this.listId = DEFAULT_LIST;
     }
 
     public Todo(Long id, String name) {
         this.id = id;
         this.todo = name;
         this.status = Status.ACTIVE;
+        this.listId = DEFAULT_LIST;
     }
 
     public Todo(Long id, String name, Status status) {
+        this(id, name, status, DEFAULT_LIST);
+    }
+
+    public Todo(Long id, String name, Status status, long listId) {
         this.id = id;
         this.todo = name;
         this.status = status;
+        this.listId = listId;
     }
 
     public Todo(Todo prev, Status newStatus) {
         this.todo = prev.todo;
         this.id = prev.id;
         this.status = newStatus;
+        this.listId = prev.listId;
+    }
+
+    /**
+     * Copies the given todo into another list.
+     */
+    public Todo(Todo prev, long newListId) {
+        this.todo = prev.todo;
+        this.id = prev.id;
+        this.status = prev.status;
+        this.listId = newListId;
     }
 
     public Long getId() {
@@ -54,12 +80,21 @@ public class Todo implements Serializable {
         return this.todo;
     }
 
+    /**
+     * @return the id of the list the todo is in, {@link #DEFAULT_LIST} if it
+     *         was not put in another one
+     */
+    public long getListId() {
+        return this.listId;
+    }
+
     @Override
     public String toString() {
         return "Todo{" +
                 "todo='" + todo + '\'' +
                 ", id=" + id +
                 ", status=" + status +
+                ", listId=" + listId +
                 '}';
     }
 
@@ -76,6 +111,7 @@ public class Todo implements Serializable {
 
         if (!todo.equals(todo1.todo)) return false;
         if (!id.equals(todo1.id)) return false;
+        if (listId != todo1.listId) return false;
         return status == todo1.status;
 
     }
@@ -85,6 +121,7 @@ public class Todo implements Serializable {
         int result = todo.hashCode();
         result = 31 * result + id.hashCode();
         result = 31 * result + status.hashCode();
+        result = 31 * result + Long.hashCode(listId);
         return result;
     }
 }
\ No newline at end of file
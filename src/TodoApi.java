@@ -0,0 +1,376 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON API over the todos, mounted at {@code /api/todos}.
+ *
+ * <pre>
+ * GET    /api/todos                 list, ?status=active|completed, ?limit=&amp;after=&amp;before=
+ * POST   /api/todos                 create one {"title"} or many [{"title"}, ...]
+ * PATCH  /api/todos                 set status of many {"ids": [...], "completed": true}
+ * DELETE /api/todos                 delete many {"ids": [...]} or ?status=completed
+ * POST   /api/todos/toggle-all      complete all, or activate all if none is active,
+ *                                   or as requested by {"completed": true}
+ * GET    /api/todos/{id}            read one
+ * PATCH  /api/todos/{id}            set status {"completed": true}
+ * DELETE /api/todos/{id}            delete one
+ * </pre>
+ *
+ * Bulk operations run as one statement over the set of todos. Ids are
+ * exchanged as strings, numbers are accepted too.
+ *
+ * The result holds the HTTP {@code status}, the {@code body} to encode, the
+ * pattern of the {@code route} and, for streamed lists, the {@code cursor}
+ * the server has to close.
+ */
+public class TodoApi implements Controller {
+
+    public static final String PATH = "/api/todos";
+
+    /**
+     * Most todos created, updated or deleted by one bulk request.
+     */
+    private static final int MAX_BULK = Integer.getInteger("todomvc.api.maxBulk", 1000);
+
+    private final Repository repository;
+    private final IdGenerator idGenerator;
+    private final Router<Endpoint> routes;
+
+    public TodoApi(Repository repository, IdGenerator idGenerator) {
+        this.repository = repository;
+        this.idGenerator = idGenerator;
+        this.routes = createRoutes();
+    }
+
+    /**
+     * @param path of the request, starting with {@link #PATH}
+     * @param body of the request, {@code null} or empty if there is none
+     *
+     * @throws IllegalArgumentException if the request is malformed
+     */
+    public Map<String, Object> handle(String method, String path, Parameters params, String body) {
+        Router.Match<Endpoint> match = routes.match(method, path);
+
+        Map<String, Object> result;
+        if (match.getStatus() == 404) {
+            result = error(404, "Not found");
+        } else if (match.getStatus() == 405) {
+            result = error(405, "Method not allowed");
+            result.put("allow", match.getAllowedMethods());
+        } else {
+            result = match.getHandler().handle(params, body, match);
+        }
+
+        result.put("route", match.getPattern());
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface Endpoint {
+        Map<String, Object> handle(Parameters params, String body, Router.Match<Endpoint> match);
+    }
+
+    @FunctionalInterface
+    private interface TodoEndpoint {
+        Map<String, Object> handle(Long id, String body);
+    }
+
+    private Router<Endpoint> createRoutes() {
+        return new Router<Endpoint>()
+                .add("GET", PATH, (params, body, match) -> handleList(params))
+                .add("POST", PATH, (params, body, match) -> handleCreate(parseBody(body)))
+                .add("PATCH", PATH, (params, body, match) -> handleUpdateAll(asObject(parseBody(body))))
+                .add("DELETE", PATH, (params, body, match) -> handleDeleteAll(params, body))
+                .add("POST", PATH + "/toggle-all", (params, body, match) ->
+                        handleToggleAll(body == null || body.isEmpty() ? null : asObject(parseBody(body))))
+                .add("GET", PATH + "/{id}", byId((id, body) -> handleRead(id)))
+                .add("PATCH", PATH + "/{id}", byId((id, body) -> handleUpdate(id, asObject(parseBody(body)))))
+                .add("DELETE", PATH + "/{id}", byId((id, body) -> handleDelete(id)));
+    }
+
+    private static Endpoint byId(TodoEndpoint endpoint) {
+        return (params, body, match) -> {
+            Long id = parseId(match.getParam("id"));
+            return id == null ? error(404, "Not found") : endpoint.handle(id, body);
+        };
+    }
+
+    private Map<String, Object> handleList(Parameters params) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        String status = params.get("status");
+
+        if (status != null) {
+            // Streamed like the unpaginated list, skipping the todos of the other status
+            TodoCursor cursor = repository.openIndex();
+            body.put("todos", TodoCursor.withStatus(cursor, parseStatus(status)));
+
+            Map<String, Object> result = result(200, body);
+            result.put("cursor", cursor);
+            return result;
+        }
+
+        int limit = (int) parseOrDefault(params.get("limit"), 0L);
+        limit = Math.max(0, Math.min(limit, Application.MAX_PAGE_SIZE));
+        Long after = parseId(params.get("after"));
+        Long before = parseId(params.get("before"));
+
+        if (limit == 0) {
+            // Encoded while read, the server closes the cursor when done
+            TodoCursor cursor = repository.openIndex();
+            body.put("activeCount", cursor.getActiveCount());
+            body.put("completedCount", cursor.getCompletedCount());
+            body.put("todos", cursor);
+
+            Map<String, Object> result = result(200, body);
+            result.put("cursor", cursor);
+            return result;
+        }
+
+        PageRequest page = after != null ? PageRequest.after(after, limit)
+                : before != null ? PageRequest.before(before, limit)
+                : PageRequest.first(limit);
+        TodoIndex index = repository.findIndex(page);
+
+        body.put("activeCount", index.getActiveCount());
+        body.put("completedCount", index.getCompletedCount());
+        body.put("nextAfter", index.getNextAfter() == null ? null : index.getNextAfter().toString());
+        body.put("previousBefore", index.getPreviousBefore() == null ? null : index.getPreviousBefore().toString());
+        body.put("todos", index.getTodos());
+        return result(200, body);
+    }
+
+    private Map<String, Object> handleCreate(Object json) {
+        if (json instanceof Map) {
+            Todo todo = new Todo(idGenerator.nextId(), parseTitle(json));
+            if (repository.save(todo) == null) {
+                return error(500, "Saving todo failed");
+            }
+
+            Map<String, Object> result = result(201, todo);
+            result.put("location", PATH + "/" + todo.getId());
+            return result;
+        }
+
+        List<?> items = asArray(json);
+        long[] ids = idGenerator.nextIds(items.size());
+        List<Todo> todos = new ArrayList<>(items.size());
+        for (int i = 0; i < ids.length; i++) {
+            todos.add(new Todo(ids[i], parseTitle(items.get(i))));
+        }
+
+        if (!todos.isEmpty() && repository.saveAll(todos) == null) {
+            return error(500, "Saving todos failed");
+        }
+
+        return result(201, Collections.singletonMap("todos", todos));
+    }
+
+    private Map<String, Object> handleUpdateAll(Map<?, ?> json) {
+        long[] ids = parseIds(json.get("ids"));
+        Todo.Status status = parseCompleted(json.get("completed"));
+
+        int updated = repository.updateStatus(TodoCriteria.withIds(ids), status);
+        if (updated < 0) {
+            return error(500, "Updating todos failed");
+        }
+        return result(200, Collections.singletonMap("updated", updated));
+    }
+
+    private Map<String, Object> handleDeleteAll(Parameters params, String body) {
+        TodoCriteria criteria;
+        if (params.get("status") != null) {
+            criteria = TodoCriteria.withStatus(parseStatus(params.get("status")));
+        } else if (body != null && !body.isEmpty()) {
+            criteria = TodoCriteria.withIds(parseIds(asObject(parseBody(body)).get("ids")));
+        } else {
+            // Deleting everything by accident is too easy otherwise
+            throw new IllegalArgumentException("Either ids or a status must be given");
+        }
+
+        int deleted = repository.deleteBy(criteria);
+        if (deleted < 0) {
+            return error(500, "Deleting todos failed");
+        }
+        return result(200, Collections.singletonMap("deleted", deleted));
+    }
+
+    private Map<String, Object> handleToggleAll(Map<?, ?> json) {
+        Boolean completed = null;
+        if (json != null && json.get("completed") != null) {
+            completed = parseCompleted(json.get("completed")) == Todo.Status.COMPLETED;
+        }
+
+        Boolean requested = completed;
+        // Counted and updated in one transaction, on one connection
+        Map<String, Object> body = repository.inTransaction(transaction -> {
+            boolean complete = requested != null
+                    ? requested
+                    : transaction.findIndex(PageRequest.first(1)).getActiveCount() > 0;
+
+            int updated = toggleAll(transaction, complete);
+            if (updated < 0) {
+                return null;
+            }
+
+            Map<String, Object> toggled = new LinkedHashMap<>();
+            toggled.put("completed", complete);
+            toggled.put("updated", updated);
+            return toggled;
+        });
+
+        return body == null ? error(500, "Updating todos failed") : result(200, body);
+    }
+
+    /**
+     * Sets the status of every todo in one statement, touching only the todos
+     * whose status changes.
+     *
+     * @return the number of updated todos or {@code -1} if updating failed
+     */
+    public int toggleAll(boolean completed) {
+        return toggleAll(repository, completed);
+    }
+
+    /**
+     * Like {@link #toggleAll(boolean)} on the given repository, e.g. the one
+     * of a list.
+     */
+    static int toggleAll(Repository repository, boolean completed) {
+        Todo.Status status = completed ? Todo.Status.COMPLETED : Todo.Status.ACTIVE;
+        Todo.Status other = completed ? Todo.Status.ACTIVE : Todo.Status.COMPLETED;
+
+        return repository.updateStatus(TodoCriteria.withStatus(other), status);
+    }
+
+    private Map<String, Object> handleRead(Long id) {
+        Todo todo = repository.findOne(id);
+        return todo == null ? error(404, "Todo " + id + " not found") : result(200, todo);
+    }
+
+    private Map<String, Object> handleUpdate(Long id, Map<?, ?> json) {
+        Todo.Status status = parseCompleted(json.get("completed"));
+
+        // Read, changed and written back in one transaction, on one connection
+        Map<String, Object> updated = repository.inTransaction(transaction -> {
+            Todo todo = transaction.findOneForUpdate(id);
+            if (todo == null) {
+                return error(404, "Todo " + id + " not found");
+            }
+            if (todo.getStatus() == status) {
+                return result(200, todo);
+            }
+
+            Todo saved = transaction.save(new Todo(todo, status));
+            return saved == null ? null : result(200, saved);
+        });
+
+        return updated == null ? error(500, "Updating todo " + id + " failed") : updated;
+    }
+
+    private Map<String, Object> handleDelete(Long id) {
+        int deleted = repository.delete(id);
+        if (deleted < 0) {
+            return error(500, "Deleting todo " + id + " failed");
+        }
+        return deleted == 0 ? error(404, "Todo " + id + " not found") : result(204, null);
+    }
+
+    private static Object parseBody(String body) {
+        if (body == null || body.isEmpty()) {
+            throw new IllegalArgumentException("A JSON body is required");
+        }
+        return JsonParser.parse(body);
+    }
+
+    private static Map<?, ?> asObject(Object json) {
+        if (!(json instanceof Map)) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+        return (Map<?, ?>) json;
+    }
+
+    private static List<?> asArray(Object json) {
+        if (!(json instanceof List)) {
+            throw new IllegalArgumentException("Expected a JSON object or array");
+        }
+
+        List<?> array = (List<?>) json;
+        if (array.size() > MAX_BULK) {
+            throw new IllegalArgumentException("At most " + MAX_BULK + " todos per request, got " + array.size());
+        }
+        return array;
+    }
+
+    private static String parseTitle(Object json) {
+        Object title = asObject(json).get("title");
+        if (!(title instanceof String) || ((String) title).trim().isEmpty()) {
+            throw new IllegalArgumentException("A todo needs a non empty title");
+        }
+        return ((String) title).trim();
+    }
+
+    private static Todo.Status parseCompleted(Object completed) {
+        if (!(completed instanceof Boolean)) {
+            throw new IllegalArgumentException("completed must be true or false");
+        }
+        return (Boolean) completed ? Todo.Status.COMPLETED : Todo.Status.ACTIVE;
+    }
+
+    private static Todo.Status parseStatus(String status) {
+        for (Todo.Status candidate : Todo.Status.values()) {
+            if (candidate.toString().equalsIgnoreCase(status)) {
+                return candidate;
+            }
+        }
+        throw new IllegalArgumentException("Unknown status " + status);
+    }
+
+    private static long[] parseIds(Object json) {
+        List<?> array = asArray(json);
+
+        long[] ids = new long[array.size()];
+        for (int i = 0; i < ids.length; i++) {
+            Object id = array.get(i);
+            Long parsed = id instanceof Long ? (Long) id
+                    : id instanceof String ? parseId((String) id)
+                    : null;
+            if (parsed == null) {
+                throw new IllegalArgumentException("Invalid id " + id);
+            }
+            ids[i] = parsed;
+        }
+        return ids;
+    }
+
+    private static Long parseId(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long parseOrDefault(String value, long defaultValue) {
+        Long parsed = parseId(value);
+        return parsed == null ? defaultValue : parsed;
+    }
+
+    private static Map<String, Object> result(int status, Object body) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("status", status);
+        result.put("body", body);
+        return result;
+    }
+
+    private static Map<String, Object> error(int status, String message) {
+        return result(status, Collections.singletonMap("error", message));
+    }
+}
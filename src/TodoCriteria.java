@@ -0,0 +1,210 @@
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * Immutable query over todos.
+ *
+ * A criteria can be evaluated in memory like any other {@link Predicate}, but
+ * unlike an opaque lambda it can also be translated into a SQL {@code WHERE}
+ * clause, so repositories backed by a database can filter rows on the server.
+ * Conditions are combined with {@code AND}.
+ */
+public final class TodoCriteria implements Predicate<Todo> {
+
+    private static final TodoCriteria ALL = new TodoCriteria(null, null, null, null, null, null);
+
+    private final Long listId;
+    private final Todo.Status status;
+    private final Long minId;
+    private final Long maxId;
+    private final String nameContains;
+    // Sorted, so matching in memory is a binary search
+    private final long[] ids;
+
+    private TodoCriteria(Long listId, Todo.Status status, Long minId, Long maxId, String nameContains, long[] ids) {
+        this.listId = listId;
+        this.status = status;
+        this.minId = minId;
+        this.maxId = maxId;
+        this.nameContains = nameContains;
+        this.ids = ids;
+    }
+
+    /**
+     * Returns a criteria matching every todo.
+     */
+    public static TodoCriteria all() {
+        return ALL;
+    }
+
+    public static TodoCriteria withStatus(Todo.Status status) {
+        return ALL.andStatus(status);
+    }
+
+    public static TodoCriteria withIds(long... ids) {
+        return ALL.andIdIn(ids);
+    }
+
+    /**
+     * Matches todos in the given list only, see {@link Todo#getListId()}.
+     */
+    public TodoCriteria andListId(long listId) {
+        return new TodoCriteria(listId, status, minId, maxId, nameContains, ids);
+    }
+
+    public TodoCriteria andStatus(Todo.Status status) {
+        return new TodoCriteria(listId, status, minId, maxId, nameContains, ids);
+    }
+
+    /**
+     * Restricts ids to the given inclusive range, {@code null} leaves a side open.
+     */
+    public TodoCriteria andIdBetween(Long from, Long to) {
+        return new TodoCriteria(listId, status, from, to, nameContains, ids);
+    }
+
+    /**
+     * Matches todos whose name contains the given text, ignoring case.
+     */
+    public TodoCriteria andNameContains(String text) {
+        return new TodoCriteria(listId, status, minId, maxId, text, ids);
+    }
+
+    /**
+     * Restricts ids to the given ones, no ids match nothing. Translates to a
+     * single {@code IN} list, so callers should bound the number of ids.
+     */
+    public TodoCriteria andIdIn(long... ids) {
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        return new TodoCriteria(listId, status, minId, maxId, nameContains, sorted);
+    }
+
+    public Long getListId() {
+        return listId;
+    }
+
+    public Todo.Status getStatus() {
+        return status;
+    }
+
+    public Long getMinId() {
+        return minId;
+    }
+
+    public Long getMaxId() {
+        return maxId;
+    }
+
+    public String getNameContains() {
+        return nameContains;
+    }
+
+    public long[] getIds() {
+        return ids == null ? null : ids.clone();
+    }
+
+    public boolean isAll() {
+        return listId == null && status == null && minId == null && maxId == null && nameContains == null && ids == null;
+    }
+
+    @Override
+    public boolean test(Todo todo) {
+        if (listId != null && todo.getListId() != listId) return false;
+        if (status != null && todo.getStatus() != status) return false;
+        if (minId != null && todo.getId() < minId) return false;
+        if (maxId != null && todo.getId() > maxId) return false;
+        if (nameContains != null) {
+            String name = todo.getTodo().toLowerCase(Locale.ROOT);
+            if (!name.contains(nameContains.toLowerCase(Locale.ROOT))) return false;
+        }
+        if (ids != null && Arrays.binarySearch(ids, todo.getId()) < 0) return false;
+        return true;
+    }
+
+    /**
+     * Returns the SQL {@code WHERE} clause for this criteria, with a leading
+     * space, or an empty string if it matches everything. Values are left as
+     * {@code ?} placeholders, see {@link #bind(PreparedStatement, int)}.
+     */
+    public String toWhereClause() {
+        StringBuilder sql = new StringBuilder();
+
+        // The list first, it leads every index
+        if (listId != null) appendCondition(sql, "list_id = ?");
+        if (status != null) appendCondition(sql, "status = ?");
+        if (minId != null) appendCondition(sql, "id >= ?");
+        if (maxId != null) appendCondition(sql, "id <= ?");
+        if (nameContains != null) appendCondition(sql, "name LIKE ?");
+        if (ids != null) appendCondition(sql, createInCondition(ids.length));
+
+        return sql.toString();
+    }
+
+    private static String createInCondition(int count) {
+        if (count == 0) {
+            // An empty IN list is not valid SQL
+            return "1 = 0";
+        }
+
+        StringBuilder condition = new StringBuilder(8 + count * 3).append("id IN (?");
+        for (int i = 1; i < count; i++) {
+            condition.append(", ?");
+        }
+        return condition.append(')').toString();
+    }
+
+    private static void appendCondition(StringBuilder sql, String condition) {
+        sql.append(sql.length() == 0 ? " WHERE " : " AND ").append(condition);
+    }
+
+    /**
+     * Binds the values of the clause returned by {@link #toWhereClause()}.
+     *
+     * @param statement to bind the values to
+     * @param index of the first placeholder
+     *
+     * @return the index of the next unbound placeholder
+     */
+    public int bind(PreparedStatement statement, int index) throws SQLException {
+        if (listId != null) statement.setLong(index++, listId);
+        if (status != null) statement.setString(index++, status.toString());
+        if (minId != null) statement.setLong(index++, minId);
+        if (maxId != null) statement.setLong(index++, maxId);
+        if (nameContains != null) statement.setString(index++, "%" + escapeLike(nameContains) + "%");
+        if (ids != null) {
+            for (long id : ids) {
+                statement.setLong(index++, id);
+            }
+        }
+
+        return index;
+    }
+
+    private static String escapeLike(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '%' || c == '_' || c == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "TodoCriteria{" +
+                "listId=" + listId +
+                ", status=" + status +
+                ", minId=" + minId +
+                ", maxId=" + maxId +
+                ", nameContains='" + nameContains + '\'' +
+                ", ids=" + (ids == null ? null : ids.length <= 10 ? Arrays.toString(ids) : ids.length + " ids") +
+                '}';
+    }
+}
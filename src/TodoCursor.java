@@ -0,0 +1,90 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The index page's todos read one at a time, newest first, while the caller
+ * consumes them, together with the number of active and completed todos.
+ *
+ * A cursor may hold on to database resources until it is closed, so it must
+ * always be closed, and it can only be iterated once.
+ */
+public interface TodoCursor extends Iterable<Todo>, AutoCloseable {
+
+    long getActiveCount();
+
+    long getCompletedCount();
+
+    default long getTotalCount() {
+        return getActiveCount() + getCompletedCount();
+    }
+
+    @Override
+    void close();
+
+    /**
+     * Returns a cursor over an index already read into memory.
+     */
+    static TodoCursor of(final TodoIndex index) {
+        return new TodoCursor() {
+            @Override
+            public long getActiveCount() {
+                return index.getActiveCount();
+            }
+
+            @Override
+            public long getCompletedCount() {
+                return index.getCompletedCount();
+            }
+
+            @Override
+            public Iterator<Todo> iterator() {
+                return index.getTodos().iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Returns a cursor over the given todos, newest first, counting them.
+     */
+    static TodoCursor of(List<Todo> todos) {
+        return of(TodoIndex.of(todos));
+    }
+
+    /**
+     * Returns the todos of the cursor with the given status, skipping the
+     * others while iterated. The cursor still has to be closed.
+     */
+    static Iterable<Todo> withStatus(final TodoCursor cursor, final Todo.Status status) {
+        return () -> new Iterator<Todo>() {
+
+            private final Iterator<Todo> todos = cursor.iterator();
+            private Todo next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && todos.hasNext()) {
+                    Todo todo = todos.next();
+                    if (todo.getStatus() == status) {
+                        next = todo;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Todo next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Todo todo = next;
+                next = null;
+                return todo;
+            }
+        };
+    }
+}
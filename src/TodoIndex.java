@@ -0,0 +1,171 @@
+import java.util.List;
+
+/**
+ * Everything the index page shows: the todos, newest first, together with the
+ * number of active and completed todos.
+ *
+ * When only a page of the todos was read, the index also carries the cursors
+ * of the neighbouring pages. The counts always cover all todos.
+ */
+public class TodoIndex {
+
+    private final List<Todo> todos;
+    private final long activeCount;
+    private final long completedCount;
+    private final Long nextAfter;
+    private final Long previousBefore;
+
+    public TodoIndex(List<Todo> todos, long activeCount, long completedCount) {
+        this(todos, activeCount, completedCount, null, null);
+    }
+
+    /**
+     * @param nextAfter cursor of the page with older todos or {@code null}
+     * @param previousBefore cursor of the page with newer todos or {@code null}
+     */
+    public TodoIndex(List<Todo> todos, long activeCount, long completedCount, Long nextAfter, Long previousBefore) {
+        this.todos = todos;
+        this.activeCount = activeCount;
+        this.completedCount = completedCount;
+        this.nextAfter = nextAfter;
+        this.previousBefore = previousBefore;
+    }
+
+    /**
+     * Builds the index of the given todos, counting them in memory.
+     */
+    public static TodoIndex of(List<Todo> todos) {
+        long completed = 0;
+        for (Todo todo : todos) {
+            if (todo.getStatus() == Todo.Status.COMPLETED) {
+                completed++;
+            }
+        }
+
+        return new TodoIndex(todos, todos.size() - completed, completed);
+    }
+
+    /**
+     * Builds the index of the requested page of the given todos, counting
+     * them in memory.
+     *
+     * @param all todos, newest first
+     */
+    public static TodoIndex of(List<Todo> all, PageRequest page) {
+        TodoIndex counted = of(all);
+        if (page.isUnbounded()) {
+            return counted;
+        }
+
+        int from = 0;
+        int to = all.size();
+
+        if (page.getAfter() != null) {
+            from = firstOlderThan(all, page.getAfter());
+        }
+        if (page.getBefore() != null) {
+            to = firstOlderThan(all, page.getBefore() + 1);
+        }
+
+        if (page.getLimit() > 0) {
+            if (page.getBefore() != null) {
+                from = Math.max(from, to - page.getLimit());
+            } else {
+                to = Math.min(to, from + page.getLimit());
+            }
+        }
+
+        List<Todo> slice = all.subList(from, Math.max(from, to));
+        Long nextAfter = to < all.size() && !slice.isEmpty() ? slice.get(slice.size() - 1).getId() : null;
+        Long previousBefore = from > 0 && !slice.isEmpty() ? slice.get(0).getId() : null;
+
+        return new TodoIndex(slice, counted.activeCount, counted.completedCount, nextAfter, previousBefore);
+    }
+
+    /**
+     * Builds the index of a page read from storage: the todos after or
+     * before the cursor of the page, up to one more than the page holds,
+     * which tells whether there is another page.
+     *
+     * @param fetched todos of the page, newest first, modified
+     * @param fetch most todos read, the page limit plus one, {@code 0} for all
+     */
+    static TodoIndex ofFetched(List<Todo> fetched, PageRequest page, int fetch, long active, long completed) {
+        boolean backwards = page.getBefore() != null;
+
+        boolean more = fetch > 0 && fetched.size() == fetch;
+        if (more) {
+            // Rows are newest first, the extra row is the one furthest from the cursor
+            fetched.remove(backwards ? 0 : fetched.size() - 1);
+        }
+
+        Long nextAfter = null;
+        Long previousBefore = null;
+        if (!fetched.isEmpty()) {
+            Long oldest = fetched.get(fetched.size() - 1).getId();
+            Long newest = fetched.get(0).getId();
+
+            // Coming from a cursor, there is a page on the other side of it
+            nextAfter = backwards || more ? oldest : null;
+            previousBefore = page.getAfter() != null || (backwards && more) ? newest : null;
+        }
+
+        return new TodoIndex(fetched, active, completed, nextAfter, previousBefore);
+    }
+
+    // Binary search for the first index holding an id lower than the given one
+    private static int firstOlderThan(List<Todo> newestFirst, long id) {
+        int low = 0;
+        int high = newestFirst.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (newestFirst.get(mid).getId() >= id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public List<Todo> getTodos() {
+        return todos;
+    }
+
+    public long getActiveCount() {
+        return activeCount;
+    }
+
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    public long getTotalCount() {
+        return activeCount + completedCount;
+    }
+
+    /**
+     * @return the cursor of the page with older todos or {@code null} if none
+     */
+    public Long getNextAfter() {
+        return nextAfter;
+    }
+
+    /**
+     * @return the cursor of the page with newer todos or {@code null} if none
+     */
+    public Long getPreviousBefore() {
+        return previousBefore;
+    }
+
+    @Override
+    public String toString() {
+        return "TodoIndex{" +
+                "todos=" + todos.size() +
+                ", activeCount=" + activeCount +
+                ", completedCount=" + completedCount +
+                ", nextAfter=" + nextAfter +
+                ", previousBefore=" + previousBefore +
+                '}';
+    }
+}
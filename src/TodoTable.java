@@ -0,0 +1,198 @@
+/**
+ * Todos by list and id in an open addressing hash table: parallel arrays of
+ * primitives, the list, the id, the status and the reference of the name in
+ * a {@link StringArena}, instead of a boxed key and an entry object per todo.
+ *
+ * Collisions are resolved by linear probing, removal shifts the following
+ * entries back instead of leaving tombstones, so lookups never slow down as
+ * todos come and go. Slots are only valid until the next put or removal.
+ *
+ * Not thread safe, the owner guards it.
+ *
+ * @see https://en.wikipedia.org/wiki/Linear_probing#Deletion
+ */
+final class TodoTable {
+
+    static final byte EMPTY = 0;
+    static final byte ACTIVE = 1;
+    static final byte COMPLETED = 2;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final float LOAD_FACTOR = 0.7f;
+
+    private long[] lists;
+    private long[] ids;
+    private long[] names;
+    private byte[] statuses;
+
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    TodoTable(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(long expectedSize) {
+        return Integer.highestOneBit(Math.max(16, (int) Math.min(MAX_CAPACITY, expectedSize / LOAD_FACTOR)) - 1) << 1;
+    }
+
+    private void allocate(int capacity) {
+        lists = new long[capacity];
+        ids = new long[capacity];
+        names = new long[capacity];
+        statuses = new byte[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    static byte toByte(Todo.Status status) {
+        return status == Todo.Status.COMPLETED ? COMPLETED : ACTIVE;
+    }
+
+    static Todo.Status toStatus(byte status) {
+        return status == COMPLETED ? Todo.Status.COMPLETED : Todo.Status.ACTIVE;
+    }
+
+    /**
+     * @return the slot of the todo or {@code -1} if there is none
+     */
+    int find(long list, long id) {
+        for (int slot = slotOf(list, id); ; slot = (slot + 1) & mask) {
+            if (statuses[slot] == EMPTY) {
+                return -1;
+            }
+            if (ids[slot] == id && lists[slot] == list) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Adds the todo or overwrites it if it is there.
+     *
+     * @return the slot of the todo
+     */
+    int put(long list, long id, byte status, long name) {
+        if (size >= resizeAt) {
+            resize();
+        }
+
+        int slot = slotOf(list, id);
+        while (statuses[slot] != EMPTY && (ids[slot] != id || lists[slot] != list)) {
+            slot = (slot + 1) & mask;
+        }
+
+        if (statuses[slot] == EMPTY) {
+            size++;
+        }
+        lists[slot] = list;
+        ids[slot] = id;
+        names[slot] = name;
+        statuses[slot] = status;
+        return slot;
+    }
+
+    void remove(int slot) {
+        size--;
+
+        // Moves back every entry of the run that would no longer be found past the gap
+        int gap = slot;
+        for (int next = (gap + 1) & mask; statuses[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slotOf(lists[next], ids[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                lists[gap] = lists[next];
+                ids[gap] = ids[next];
+                names[gap] = names[next];
+                statuses[gap] = statuses[next];
+                gap = next;
+            }
+        }
+        statuses[gap] = EMPTY;
+    }
+
+    private void resize() {
+        if (statuses.length == MAX_CAPACITY) {
+            throw new IllegalStateException("Table full at " + size + " todos");
+        }
+        resize(statuses.length * 2);
+    }
+
+    /**
+     * Grows the table at once to hold the given number of todos, instead of
+     * doubling it step by step while they are added.
+     */
+    void reserve(long expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        if (capacity > statuses.length) {
+            resize(capacity);
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldLists = lists;
+        long[] oldIds = ids;
+        long[] oldNames = names;
+        byte[] oldStatuses = statuses;
+
+        allocate(capacity);
+        size = 0;
+        for (int slot = 0; slot < oldStatuses.length; slot++) {
+            if (oldStatuses[slot] != EMPTY) {
+                put(oldLists[slot], oldIds[slot], oldStatuses[slot], oldNames[slot]);
+            }
+        }
+    }
+
+    // The list is spread by the golden ratio first, so the same id in two lists does not collide
+    private int slotOf(long list, long id) {
+        return (int) Hashing.mix(id ^ (list * 0x9e3779b97f4a7c15L)) & mask;
+    }
+
+    byte status(int slot) {
+        return statuses[slot];
+    }
+
+    void setStatus(int slot, byte status) {
+        statuses[slot] = status;
+    }
+
+    long name(int slot) {
+        return names[slot];
+    }
+
+    void setName(int slot, long name) {
+        names[slot] = name;
+    }
+
+    long list(int slot) {
+        return lists[slot];
+    }
+
+    long id(int slot) {
+        return ids[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of slots, the upper bound of slots to iterate
+     */
+    int capacity() {
+        return statuses.length;
+    }
+
+    boolean isEmpty(int slot) {
+        return statuses[slot] == EMPTY;
+    }
+
+    @Override
+    public String toString() {
+        return "TodoTable{" +
+                "size=" + size +
+                ", capacity=" + statuses.length +
+                '}';
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * A single write to a repository, to be applied later and possibly together
+ * with others, see {@link Repository#writeAll(java.util.List)}.
+ */
+public final class TodoWrite {
+
+    public enum Kind {
+        SAVE,
+        TOGGLE,
+        DELETE
+    }
+
+    private final Kind kind;
+    private final Todo todo;
+    private final Long id;
+
+    private TodoWrite(Kind kind, Todo todo, Long id) {
+        this.kind = kind;
+        this.todo = todo;
+        this.id = id;
+    }
+
+    public static TodoWrite save(Todo todo) {
+        return new TodoWrite(Kind.SAVE, todo, todo.getId());
+    }
+
+    public static TodoWrite toggle(Long id) {
+        return new TodoWrite(Kind.TOGGLE, null, id);
+    }
+
+    public static TodoWrite delete(Long id) {
+        return new TodoWrite(Kind.DELETE, null, id);
+    }
+
+    /**
+     * Applies the write on its own, as the matching single operation of the
+     * repository would.
+     *
+     * @return the result of that operation
+     */
+    public Object applyTo(Repository repository) {
+        switch (kind) {
+            case SAVE:
+                return repository.save(todo);
+            case TOGGLE:
+                return repository.toggleStatus(id);
+            default:
+                return repository.delete(id);
+        }
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the todo to save or {@code null} for other kinds
+     */
+    public Todo getTodo() {
+        return todo;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return "TodoWrite{" +
+                "kind=" + kind +
+                ", todo=" + todo +
+                ", id=" + id +
+                '}';
+    }
+}
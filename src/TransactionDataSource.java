@@ -0,0 +1,132 @@
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+/**
+ * Hands out the one connection of a transaction, so code written to borrow
+ * a connection per operation runs all its operations in the transaction.
+ *
+ * The connection handed out cannot end the transaction: closing it,
+ * committing, rolling back and switching auto-commit are ignored, that is
+ * left to the owner of the transaction. Any {@link SQLException} thrown by
+ * the connection, its statements or their results marks the transaction as
+ * failed, see {@link #isFailed()}, also when the caller swallows it.
+ */
+public class TransactionDataSource implements DataSource {
+
+    private final Connection connection;
+    private final Connection shared;
+    private volatile boolean failed;
+
+    public TransactionDataSource(Connection connection) {
+        this.connection = connection;
+        this.shared = proxy(Connection.class, connection);
+    }
+
+    /**
+     * @return {@code true} if an operation of the transaction failed, so it
+     *         has to be rolled back
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public Connection getConnection() {
+        return shared;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("A transaction has a single connection");
+    }
+
+    private <T> T proxy(Class<T> type, T target) {
+        InvocationHandler handler = (proxy, method, args) -> invoke(target, method, args);
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    private Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        if (target == connection) {
+            switch (method.getName()) {
+                case "close":
+                case "commit":
+                case "rollback":
+                case "setAutoCommit":
+                    return null;
+                case "getAutoCommit":
+                    return false;
+                default:
+                    break;
+            }
+        }
+
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) {
+                failed = true;
+            }
+            throw e.getCause();
+        }
+
+        // Statements and results, e.g. of prepareStatement() and executeQuery()
+        Class<?> type = method.getReturnType();
+        if (result != null && type.isInterface()
+                && (Statement.class.isAssignableFrom(type) || ResultSet.class.isAssignableFrom(type))) {
+            return proxy(castType(type), result);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<Object> castType(Class<?> type) {
+        return (Class<Object>) type;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -0,0 +1,159 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Counts the writes to the wrapped repository, so readers can tell whether
+ * the data changed since they last looked, see {@link #getVersion()}.
+ *
+ * The version is bumped once a write returned, failed or not, never before:
+ * a reader that saw a version may have read data newer than it, but never
+ * older. Writes made around this repository, e.g. by another server on the
+ * same database, are not seen.
+ */
+public class VersionedRepository extends ForwardingRepository {
+
+    private final AtomicLong version;
+
+    public VersionedRepository(Repository delegate) {
+        this(delegate, new AtomicLong());
+    }
+
+    private VersionedRepository(Repository delegate, AtomicLong version) {
+        super(delegate);
+        this.version = version;
+    }
+
+    /**
+     * @return a number that grows with every write, the same number means no
+     *         write finished in between
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public Todo save(Todo entity) {
+        try {
+            return delegate.save(entity);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public int[] saveAll(Collection<Todo> entities) {
+        try {
+            return delegate.saveAll(entities);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public Todo toggleStatus(Long id) {
+        try {
+            return delegate.toggleStatus(id);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public int updateStatus(TodoCriteria criteria, Todo.Status status) {
+        try {
+            return delegate.updateStatus(criteria, status);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public Object[] writeAll(List<TodoWrite> writes) {
+        try {
+            return delegate.writeAll(writes);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    // Lists share the version, a write to any list changes it
+    @Override
+    public Repository forList(long listId) {
+        return new VersionedRepository(delegate.forList(listId), version);
+    }
+
+    @Override
+    public <T> T inTransaction(Function<Repository, T> work) {
+        try {
+            return delegate.inTransaction(work);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public int delete(Todo entity) {
+        try {
+            return delegate.delete(entity);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public int delete(Long id) {
+        try {
+            return delegate.delete(id);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public int delete(Collection<Todo> entities) {
+        try {
+            return delegate.delete(entities);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public int[] deleteAllById(long[] ids) {
+        try {
+            return delegate.deleteAllById(ids);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public int deleteBy(Predicate<Todo> predicate) {
+        try {
+            return delegate.deleteBy(predicate);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public int deleteBy(TodoCriteria criteria) {
+        try {
+            return delegate.deleteBy(criteria);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        try {
+            delegate.deleteAll();
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+}
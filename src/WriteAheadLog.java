@@ -0,0 +1,304 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of changes, written before they are acknowledged so they
+ * can be replayed after a crash. The log is a sequence of segment files,
+ * {@code wal-<segment>.log}, a new one is started by {@link #rotate()}, e.g.
+ * once a snapshot covers everything before it, so the old ones can go.
+ *
+ * A record is its length, the CRC32 of its payload and the payload. A write
+ * torn by a crash fails the check and ends the log there.
+ *
+ * Appending only hands the record to the operating system, {@link #sync(long)}
+ * waits until it is on disk. Concurrent callers share an fsync: the first to
+ * arrive syncs everything appended so far, the ones arriving meanwhile wait
+ * for it and then for the next, which covers all of them, so a burst of
+ * writes costs a couple of fsyncs instead of one each.
+ *
+ * @see https://dev.mysql.com/doc/refman/5.7/en/optimizing-innodb-logging.html
+ */
+final class WriteAheadLog implements Closeable {
+
+    private static final int HEADER_BYTES = 8;
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final boolean fsync;
+
+    private FileChannel channel;
+    private long segment;
+
+    // Positions count the bytes ever appended, over all segments
+    private long appended;
+    private long synced;
+    private boolean syncing;
+    private long syncs;
+
+    // Why a record could not be cut off again, no record is appended after it
+    private IOException failed;
+
+    /**
+     * Starts appending to a new segment.
+     *
+     * @param segment number of the segment to start, higher than any there
+     * @param fsync whether {@link #sync(long)} waits for the disk or only for
+     *              the operating system, which loses the latest writes if the
+     *              machine, not just the process, crashes
+     */
+    WriteAheadLog(Path directory, long segment, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.fsync = fsync;
+        this.segment = segment;
+        this.channel = open(segment);
+    }
+
+    private FileChannel open(long segment) throws IOException {
+        return FileChannel.open(pathOf(directory, segment),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    static Path pathOf(Path directory, long segment) {
+        return directory.resolve(String.format("%s%016d%s", PREFIX, segment, SUFFIX));
+    }
+
+    /**
+     * @return the numbers of the segments in the directory, in order
+     */
+    static List<Long> segments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Hands every intact record of the segment to the consumer, in order. A
+     * torn record at the end of the last segment is cut off, one anywhere
+     * else means the log is damaged.
+     *
+     * @return the number of records read
+     */
+    static long replay(Path directory, long segment, boolean last, Consumer<ByteBuffer> records) throws IOException {
+        Path path = pathOf(directory, segment);
+        long valid = 0;
+        long count = 0;
+
+        long size = Files.size(path);
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                byte[] payload;
+                long checksum;
+                try {
+                    checksum = in.readInt() & 0xFFFFFFFFL;
+                    // A damaged length must not allocate more than the segment holds
+                    if (length < 0 || length > size - valid - HEADER_BYTES) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(payload, 0, payload.length);
+                if (crc.getValue() != checksum) {
+                    break;
+                }
+
+                records.accept(ByteBuffer.wrap(payload));
+                valid += HEADER_BYTES + length;
+                count++;
+            }
+        }
+
+        if (valid < size) {
+            if (!last) {
+                throw new IOException("Log segment " + path + " is damaged at byte " + valid + " of " + size);
+            }
+
+            Log.warn("Cutting off {} bytes of a torn write at the end of {}", size - valid, path);
+            try (FileChannel torn = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                torn.truncate(valid);
+                torn.force(true);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Appends a record, to be synced with {@link #sync(long)}. A record not
+     * written completely is cut off again, so the records appended after it
+     * are not lost behind it on replay. If that fails too the log refuses
+     * further records.
+     *
+     * @return the position to sync up to for the record to be on disk
+     */
+    synchronized long append(byte[] payload, int length) throws IOException {
+        if (failed != null) {
+            throw new IOException("Log segment " + pathOf(directory, segment) + " is damaged", failed);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, length);
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length);
+        record.putInt(length).putInt((int) crc.getValue()).put(payload, 0, length);
+        record.flip();
+
+        long start = channel.size();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            try {
+                channel.truncate(start);
+            } catch (IOException truncating) {
+                e.addSuppressed(truncating);
+                failed = e;
+            }
+            throw e;
+        }
+
+        appended += record.limit();
+        return appended;
+    }
+
+    /**
+     * Waits until everything up to the given position is on disk, syncing
+     * it unless another caller already does.
+     */
+    void sync(long position) throws IOException {
+        FileChannel toSync;
+        long target;
+
+        synchronized (this) {
+            while (synced < position && syncing) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for the log to be synced", e);
+                }
+            }
+            if (synced >= position) {
+                return;
+            }
+
+            syncing = true;
+            toSync = channel;
+            target = appended;
+        }
+
+        boolean done = false;
+        try {
+            if (fsync) {
+                toSync.force(false);
+            }
+            done = true;
+        } finally {
+            synchronized (this) {
+                syncing = false;
+                if (done) {
+                    synced = Math.max(synced, target);
+                    syncs++;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Syncs and closes the current segment and starts the next one.
+     *
+     * @return the number of the segment started
+     */
+    synchronized long rotate() throws IOException {
+        while (syncing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for the log to be synced", e);
+            }
+        }
+
+        channel.force(false);
+        channel.close();
+        synced = appended;
+        notifyAll();
+
+        segment++;
+        channel = open(segment);
+        return segment;
+    }
+
+    /**
+     * Deletes the segments before the given one, no longer needed once a
+     * snapshot covers them.
+     */
+    void deleteBefore(long segment) throws IOException {
+        for (long old : segments(directory)) {
+            if (old < segment) {
+                Files.deleteIfExists(pathOf(directory, old));
+            }
+        }
+    }
+
+    synchronized long getAppendedBytes() {
+        return appended;
+    }
+
+    synchronized long getSyncCount() {
+        return syncs;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "WriteAheadLog{" +
+                "segment=" + segment +
+                ", appended=" + appended +
+                ", synced=" + synced +
+                ", syncs=" + syncs +
+                ", failed=" + (failed != null) +
+                '}';
+    }
+}